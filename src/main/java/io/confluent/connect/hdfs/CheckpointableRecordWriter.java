@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+/**
+ * A record writer for a row format, whose file is valid up to the end of any record. Such a file
+ * can be truncated to the length returned by {@link #checkpoint()} and committed, if the task
+ * fails before the file is closed.
+ */
+public interface CheckpointableRecordWriter extends SizeAwareRecordWriter {
+
+  /**
+   * Write out the buffered records and flush them to the file system, so that they are visible to
+   * new readers and survive the loss of this process.
+   *
+   * @return the length of the file up to the last record written, 0 if nothing was written yet
+   */
+  long checkpoint();
+}
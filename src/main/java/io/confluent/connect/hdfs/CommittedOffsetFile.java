@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.avro.SchemaParseException;
+import org.apache.avro.file.SeekableInput;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.confluent.connect.avro.AvroData;
+import io.confluent.connect.hdfs.filter.TopicPartitionCommittedFileFilter;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+/**
+ * A small file next to the WAL of a topic partition that names its committed file with the
+ * latest offset, along with the schema of the records in that file. It's replaced after each
+ * commit, and read before scanning the directories of the topic for that file, which lists every
+ * directory the topic was ever written to, and before opening the file to read its schema.
+ *
+ * <p>The file is only used if the committed file it names still exists and no committed file of
+ * the topic partition with a later offset is next to it, and the offset is taken from the name of
+ * that file. If it's missing, can't be read or names a file that's gone or outdated, the
+ * directories are scanned as before. Updating it is best effort: if an update fails the file is
+ * removed, so that the next recovery scans the directories rather than resuming from the offset
+ * of an older commit. </p>
+ */
+final class CommittedOffsetFile {
+  private static final Logger log = LoggerFactory.getLogger(CommittedOffsetFile.class);
+  private static final String NAME = "committed";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final HdfsStorage storage;
+  private final AvroData avroData;
+  private final String filename;
+  private final TopicPartitionCommittedFileFilter filter;
+  // The offset last written by this task, the file is never moved back
+  private long latestOffset = -1;
+  // Whether an update failed and the outdated file couldn't be removed either
+  private boolean outdated = false;
+
+  CommittedOffsetFile(HdfsStorage storage, AvroData avroData, String logsDir, TopicPartition tp) {
+    this.storage = storage;
+    this.avroData = avroData;
+    this.filename = FileUtils.fileName(storage.url(), logsDir, tp, NAME);
+    this.filter = new TopicPartitionCommittedFileFilter(tp);
+  }
+
+  /**
+   * Record the committed file with the latest offset, unless a later one was recorded already.
+   * Commits of a topic partition may finish concurrently.
+   *
+   * @param offset the last offset in the file
+   * @param committedFile the committed file
+   * @param schema the value schema of the records in the file, or null if they have none
+   */
+  synchronized void update(long offset, String committedFile, Schema schema) {
+    if (offset <= latestOffset) {
+      return;
+    }
+    String tempFile = filename + TEMP_SUFFIX;
+    try {
+      // The schema is on the second line, which is empty if the records have none
+      StringBuilder contents = new StringBuilder(committedFile).append('\n');
+      if (schema != null) {
+        contents.append(avroData.fromConnectSchema(schema).toString());
+      }
+      try (FSDataOutputStream out = storage.create(tempFile, true)) {
+        out.write(contents.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      storage.replace(tempFile, filename);
+      latestOffset = offset;
+      outdated = false;
+    } catch (IOException | ConnectException e) {
+      log.warn(
+          "Could not update committed offset file {}, removing it: {}",
+          filename,
+          e.getMessage()
+      );
+      remove();
+    }
+  }
+
+  private synchronized void remove() {
+    try {
+      storage.delete(filename);
+    } catch (ConnectException e) {
+      log.error(
+          "Could not remove outdated committed offset file {}, it's ignored if a later committed "
+              + "file is next to the one it names: {}",
+          filename,
+          e.getMessage()
+      );
+      outdated = true;
+    }
+  }
+
+  /**
+   * @return the committed file with the latest offset and its schema, or null if it isn't known,
+   *     the file no longer exists or a later file was committed next to it
+   */
+  Entry read() {
+    synchronized (this) {
+      if (outdated) {
+        return null;
+      }
+    }
+    try {
+      if (!storage.exists(filename)) {
+        return null;
+      }
+      String contents;
+      try (SeekableInput in = storage.open(filename, storage.conf())) {
+        byte[] bytes = new byte[(int) in.length()];
+        int read = 0;
+        while (read < bytes.length) {
+          int n = in.read(bytes, read, bytes.length - read);
+          if (n < 0) {
+            break;
+          }
+          read += n;
+        }
+        contents = new String(bytes, 0, read, StandardCharsets.UTF_8);
+      }
+      int newline = contents.indexOf('\n');
+      String committedFile = newline < 0 ? contents : contents.substring(0, newline);
+      Path path = new Path(committedFile);
+      long offset = FileUtils.extractOffset(path.getName());
+      if (!storage.exists(committedFile)) {
+        log.info(
+            "Committed file {} named in {} no longer exists, ignoring it",
+            committedFile,
+            filename
+        );
+        return null;
+      }
+      // Catches an update that failed without the file being removed, as the later files are
+      // likely committed to the same directory
+      for (FileStatus status : storage.list(path.getParent().toString(), filter)) {
+        if (FileUtils.extractOffset(status.getPath().getName()) > offset) {
+          log.info(
+              "Committed file {} named in {} is outdated by {}, ignoring it",
+              committedFile,
+              filename,
+              status.getPath()
+          );
+          return null;
+        }
+      }
+      Schema schema = null;
+      if (newline >= 0 && newline < contents.length() - 1) {
+        org.apache.avro.Schema avroSchema =
+            new org.apache.avro.Schema.Parser().parse(contents.substring(newline + 1));
+        schema = avroData.toConnectSchema(avroSchema);
+      }
+      return new Entry(path, newline >= 0, schema);
+    } catch (IOException | IllegalArgumentException | ConnectException | SchemaParseException e) {
+      log.warn("Could not read committed offset file {}: {}", filename, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * The contents of the file.
+   */
+  static final class Entry {
+    private final Path committedFile;
+    private final boolean hasSchema;
+    private final Schema schema;
+
+    private Entry(Path committedFile, boolean hasSchema, Schema schema) {
+      this.committedFile = committedFile;
+      this.hasSchema = hasSchema;
+      this.schema = schema;
+    }
+
+    /**
+     * @return the committed file with the latest offset
+     */
+    Path committedFile() {
+      return committedFile;
+    }
+
+    /**
+     * @return whether the schema of the file was recorded, which older files don't do
+     */
+    boolean hasSchema() {
+      return hasSchema;
+    }
+
+    /**
+     * @return the value schema of the records in the file, or null if it wasn't recorded or the
+     *     records have none
+     */
+    Schema schema() {
+      return schema;
+    }
+  }
+}
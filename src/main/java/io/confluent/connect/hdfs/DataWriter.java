@@ -34,15 +34,18 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -83,6 +86,13 @@ public class DataWriter {
   private HdfsSinkConnectorConfig connectorConfig;
   private AvroData avroData;
   private SinkTaskContext context;
+  private DeferredSinkTaskContext writerContext;
+  private ExecutorService partitionWriterExecutor;
+  private ExecutorService recoveryExecutor;
+  private ExecutorService commitExecutor;
+  private ExecutorService fileExecutor;
+  private OpenWriterLimiter openWriterLimiter;
+  private HdfsSinkTaskMetrics metrics;
   private ExecutorService executorService;
   private String hiveDatabase;
   private HiveMetaStore hiveMetaStore;
@@ -113,7 +123,8 @@ public class DataWriter {
     this.context = context;
     topicDirs = new HashMap<>();
     logDirs = new HashMap<>();
-    topicPartitionWriters = new HashMap<>();
+    // Concurrent, since the task metrics are read from JMX threads
+    topicPartitionWriters = new ConcurrentHashMap<>();
 
     try {
       partitioner = newPartitioner(config);
@@ -233,6 +244,79 @@ public class DataWriter {
       initializeHiveServices(hadoopConfiguration);
     }
 
+    int partitionWriterThreads = connectorConfig.partitionWriterThreads();
+    int recoveryThreads = connectorConfig.recoveryThreads();
+    if (partitionWriterThreads > 1 || recoveryThreads > 1) {
+      writerContext = new DeferredSinkTaskContext(context);
+    }
+    if (partitionWriterThreads > 1) {
+      log.info("Writing topic partitions with {} threads", partitionWriterThreads);
+      partitionWriterExecutor = Executors.newFixedThreadPool(
+          partitionWriterThreads,
+          new TaskThreadFactory(connectorConfig, "writer")
+      );
+    }
+    if (recoveryThreads > 1) {
+      log.info("Recovering topic partitions with {} threads", recoveryThreads);
+      recoveryExecutor = Executors.newFixedThreadPool(
+          recoveryThreads,
+          new TaskThreadFactory(connectorConfig, "recovery")
+      );
+    }
+
+    if (connectorConfig.rotationCommitMaxInFlight() > 0) {
+      log.info(
+          "Committing rotated files in the background with {} threads and up to {} commits in "
+              + "flight per topic partition",
+          connectorConfig.rotationCommitThreads(),
+          connectorConfig.rotationCommitMaxInFlight()
+      );
+      commitExecutor = Executors.newFixedThreadPool(
+          connectorConfig.rotationCommitThreads(),
+          new TaskThreadFactory(connectorConfig, "commit")
+      );
+    }
+
+    if (connectorConfig.rotationFileThreads() > 1) {
+      log.info(
+          "Closing and committing the files of a rotation with {} threads",
+          connectorConfig.rotationFileThreads()
+      );
+      fileExecutor = Executors.newFixedThreadPool(
+          connectorConfig.rotationFileThreads(),
+          new TaskThreadFactory(connectorConfig, "file")
+      );
+    }
+
+    if (connectorConfig.maxOpenWriters() > 0) {
+      log.info("Limiting the task to {} open writers", connectorConfig.maxOpenWriters());
+      openWriterLimiter = new OpenWriterLimiter(connectorConfig.maxOpenWriters());
+    }
+
+    metrics = new HdfsSinkTaskMetrics(connectorConfig.name(), connectorConfig.getTaskId());
+    metrics.addGauge(
+        "directory-checks-saved-total",
+        "The number of directory existence checks saved by knowing the directories exist",
+        storage::directoryChecksSaved
+    );
+    metrics.addGauge(
+        "lease-waiting-partitions",
+        "The number of topic partitions paused until another task releases the lease on their WAL",
+        this::getLeaseWaitingPartitionCount
+    );
+    if (openWriterLimiter != null) {
+      metrics.addGauge(
+          "open-writers",
+          "The number of record writers open in the task",
+          openWriterLimiter::openWriters
+      );
+      metrics.addGauge(
+          "writer-evictions-total",
+          "The number of record writers closed early to stay within the open writer limit",
+          openWriterLimiter::evictions
+      );
+    }
+
     initializeTopicPartitionWriters(context.assignment());
   }
 
@@ -329,33 +413,41 @@ public class DataWriter {
     } else {
       throw new ConnectException("One of old or new format classes must be provided");
     }
-    executorService = Executors.newSingleThreadExecutor();
-    hiveUpdateFutures = new LinkedList<>();
+    executorService =
+        Executors.newSingleThreadExecutor(new TaskThreadFactory(connectorConfig, "hive"));
+    // Partition writers may run on the partition writer pool, so they add to this concurrently
+    hiveUpdateFutures = new ConcurrentLinkedQueue<>();
   }
 
   private void initializeTopicPartitionWriters(Set<TopicPartition> assignment) {
     for (TopicPartition tp : assignment) {
-      TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
-          tp,
-          storage,
-          writerProvider,
-          newWriterProvider,
-          partitioner,
-          connectorConfig,
-          context,
-          avroData,
-          hiveMetaStore,
-          hive,
-          schemaFileReader,
-          executorService,
-          hiveUpdateFutures,
-          time,
-          connectorConfig.getHiveTableName(tp.topic())
-      );
-      topicPartitionWriters.put(tp, topicPartitionWriter);
+      topicPartitionWriters.put(tp, newTopicPartitionWriter(tp));
     }
   }
 
+  private TopicPartitionWriter newTopicPartitionWriter(TopicPartition tp) {
+    return new TopicPartitionWriter(
+        tp,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        writerContext != null ? writerContext : context,
+        avroData,
+        hiveMetaStore,
+        hive,
+        schemaFileReader,
+        executorService,
+        hiveUpdateFutures,
+        commitExecutor,
+        openWriterLimiter,
+        fileExecutor,
+        time,
+        connectorConfig.getHiveTableName(tp.topic())
+    );
+  }
+
   public void write(Collection<SinkRecord> records) {
     for (SinkRecord record : records) {
       String topic = record.topic();
@@ -383,13 +475,128 @@ public class DataWriter {
       }
     }
 
-    for (TopicPartition tp : topicPartitionWriters.keySet()) {
-      topicPartitionWriters.get(tp).write();
+    if (partitionWriterExecutor == null) {
+      for (TopicPartition tp : topicPartitionWriters.keySet()) {
+        topicPartitionWriters.get(tp).write();
+      }
+    } else {
+      writeConcurrently();
     }
   }
 
-  public void recover(TopicPartition tp) {
-    topicPartitionWriters.get(tp).recover();
+  /**
+   * Run {@link TopicPartitionWriter#write()} for every topic partition on the partition writer
+   * pool and wait for all of them before returning. Each writer is only ever run by one thread at
+   * a time, so the order of records and the WAL and commit steps within a topic partition are the
+   * same as when writing sequentially. Calls to the task context are replayed on this thread once
+   * all writers are done. If any writer failed, the first failure is rethrown after every other
+   * writer has finished.
+   */
+  private void writeConcurrently() {
+    Map<TopicPartition, Future<?>> futures = new LinkedHashMap<>();
+    RuntimeException failure = null;
+    writerContext.startDeferring();
+    try {
+      for (Map.Entry<TopicPartition, TopicPartitionWriter> entry
+          : topicPartitionWriters.entrySet()) {
+        futures.put(entry.getKey(), partitionWriterExecutor.submit(entry.getValue()::write));
+      }
+      for (Map.Entry<TopicPartition, Future<?>> entry : futures.entrySet()) {
+        Throwable cause = awaitWriter(entry.getValue());
+        if (cause != null) {
+          log.error("Failed to write records for topic partition {}: ", entry.getKey(), cause);
+          if (failure == null) {
+            failure = cause instanceof RuntimeException
+                      ? (RuntimeException) cause
+                      : new ConnectException(cause);
+          }
+        }
+      }
+    } finally {
+      writerContext.stopDeferring();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private Throwable awaitWriter(Future<?> future) {
+    // A writer must never be left running once write() returns, otherwise the next call could run
+    // the same TopicPartitionWriter on two threads. Keep waiting if we're interrupted.
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          future.get();
+          return null;
+        } catch (ExecutionException e) {
+          return e.getCause();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public boolean recover(TopicPartition tp) {
+    return topicPartitionWriters.get(tp).recover();
+  }
+
+  /**
+   * Recover the given topic partitions, concurrently on the recovery pool if there is one. Each
+   * writer pauses its topic partition, applies and truncates its WAL and rewinds the consumer to
+   * the last committed offset, as when recovering one topic partition at a time. Calls to the
+   * task context are replayed on this thread once all of them are done, before the consumer is
+   * polled again. If any recovery threw, the first failure is rethrown after every other one has
+   * finished.
+   *
+   * @param partitions the topic partitions to recover
+   * @return whether each topic partition was recovered, in the given order. Those that weren't
+   *     are recovered again before their next write
+   */
+  public Map<TopicPartition, Boolean> recover(Collection<TopicPartition> partitions) {
+    Map<TopicPartition, Boolean> recovered = new LinkedHashMap<>();
+    if (recoveryExecutor == null || partitions.size() < 2) {
+      for (TopicPartition tp : partitions) {
+        recovered.put(tp, recover(tp));
+      }
+      return recovered;
+    }
+
+    Map<TopicPartition, Boolean> results = new ConcurrentHashMap<>();
+    Map<TopicPartition, Future<?>> futures = new LinkedHashMap<>();
+    RuntimeException failure = null;
+    writerContext.startDeferring();
+    try {
+      for (TopicPartition tp : partitions) {
+        TopicPartitionWriter writer = topicPartitionWriters.get(tp);
+        futures.put(tp, recoveryExecutor.submit(() -> results.put(tp, writer.recover())));
+      }
+      for (Map.Entry<TopicPartition, Future<?>> entry : futures.entrySet()) {
+        Throwable cause = awaitWriter(entry.getValue());
+        if (cause != null) {
+          log.error("Failed to recover topic partition {}: ", entry.getKey(), cause);
+          if (failure == null) {
+            failure = cause instanceof RuntimeException
+                      ? (RuntimeException) cause
+                      : new ConnectException(cause);
+          }
+        }
+      }
+    } finally {
+      writerContext.stopDeferring();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    for (TopicPartition tp : partitions) {
+      recovered.put(tp, results.getOrDefault(tp, false));
+    }
+    return recovered;
   }
 
   public void syncWithHive() throws ConnectException {
@@ -409,7 +616,8 @@ public class DataWriter {
         FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
             storage,
             new Path(topicDir),
-            filter
+            filter,
+            connectorConfig.directoryListingMaxConcurrency()
         );
         if (fileStatusWithMaxOffset != null) {
           final Path path = fileStatusWithMaxOffset.getPath();
@@ -423,7 +631,11 @@ public class DataWriter {
           List<String> partitions = hiveMetaStore.listPartitions(hiveDatabase,
                   hiveTableName,
                   (short) -1);
-          FileStatus[] statuses = FileUtils.getDirectories(storage, new Path(topicDir));
+          FileStatus[] statuses = FileUtils.getDirectories(
+              storage,
+              new Path(topicDir),
+              connectorConfig.directoryListingMaxConcurrency()
+          );
           for (FileStatus status : statuses) {
             String location = status.getPath().toString();
             if (!partitions.contains(location)) {
@@ -439,54 +651,76 @@ public class DataWriter {
   }
 
   public void open(Collection<TopicPartition> partitions) {
+    List<TopicPartition> opened = new ArrayList<>();
     for (TopicPartition tp : partitions) {
-      TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
-          tp,
-          storage,
-          writerProvider,
-          newWriterProvider,
-          partitioner,
-          connectorConfig,
-          context,
-          avroData,
-          hiveMetaStore,
-          hive,
-          schemaFileReader,
-          executorService,
-          hiveUpdateFutures,
-          time,
-          connectorConfig.getHiveTableName(tp.topic())
-      );
-      topicPartitionWriters.put(tp, topicPartitionWriter);
-      // We need to immediately start recovery to ensure we pause consumption of messages for the
-      // assigned topics while we try to recover offsets and rewind.
-      recover(tp);
+      TopicPartitionWriter existing = topicPartitionWriters.get(tp);
+      if (existing != null) {
+        // The partition stayed with this task, keep its temp files unless another task committed
+        // files for it in the meantime
+        if (existing.isCommittedOffsetCurrent()) {
+          log.info("Keeping the writer of topic partition {} that is still assigned", tp);
+          continue;
+        }
+        log.info("Files were committed for topic partition {} elsewhere, recovering it", tp);
+        closeWriter(existing);
+      }
+      topicPartitionWriters.put(tp, newTopicPartitionWriter(tp));
+      opened.add(tp);
     }
+    // We need to immediately start recovery to ensure we pause consumption of messages for the
+    // assigned topics while we try to recover offsets and rewind.
+    recover(opened);
   }
 
+  /**
+   * Close the writers of all topic partitions.
+   */
   public void close() {
-    // Close any writers we have. We may get assigned the same partitions and end up duplicating
-    // some effort since we'll have to reprocess those messages. It may be possible to hold on to
-    // the TopicPartitionWriter and continue to use the temp file, but this can get significantly
-    // more complex due to potential failures and network partitions. For example, we may get
-    // this close, then miss a few generations of group membership, during which
-    // data may have continued to be processed and we'd have to restart from the recovery stage,
-    // make sure we apply the WAL, and only reuse the temp file if the starting offset is still
-    // valid. For now, we prefer the simpler solution that may result in a bit of wasted effort.
-    for (TopicPartitionWriter writer : topicPartitionWriters.values()) {
-      try {
-        if (writer != null) {
-          // In some failure modes, the writer might not have been created for all assignments
-          writer.close();
-        }
-      } catch (ConnectException e) {
-        log.warn("Unable to close writer for topic partition {}: ", writer.topicPartition(), e);
+    close(new ArrayList<>(topicPartitionWriters.keySet()));
+  }
+
+  /**
+   * Close the writers of the given topic partitions, discarding their temp files. Writers of the
+   * topic partitions that remain assigned, as with incremental cooperative rebalancing, carry on
+   * with their temp files. If a closed topic partition is assigned to this task again, it is
+   * recovered from the WAL and the consumer rewinds to its last committed offset.
+   */
+  public void close(Collection<TopicPartition> partitions) {
+    for (TopicPartition tp : partitions) {
+      TopicPartitionWriter writer = topicPartitionWriters.remove(tp);
+      if (writer != null) {
+        // In some failure modes, the writer might not have been created for all assignments
+        closeWriter(writer);
       }
     }
-    topicPartitionWriters.clear();
+  }
+
+  private void closeWriter(TopicPartitionWriter writer) {
+    try {
+      writer.close();
+    } catch (ConnectException e) {
+      log.warn("Unable to close writer for topic partition {}: ", writer.topicPartition(), e);
+    }
   }
 
   public void stop() {
+    if (partitionWriterExecutor != null) {
+      partitionWriterExecutor.shutdownNow();
+    }
+
+    if (recoveryExecutor != null) {
+      recoveryExecutor.shutdownNow();
+    }
+
+    if (commitExecutor != null) {
+      // Writers wait for their in-flight commits when they're closed, so nothing is pending here
+      commitExecutor.shutdownNow();
+    }
+
+    if (fileExecutor != null) {
+      fileExecutor.shutdownNow();
+    }
+
     if (executorService != null) {
       boolean terminated = false;
       try {
@@ -511,6 +745,7 @@ public class DataWriter {
     }
 
     storage.close();
+    metrics.close();
 
     if (ticketRenewThread != null) {
       synchronized (this) {
@@ -554,6 +789,47 @@ public class DataWriter {
     return storage;
   }
 
+  HdfsSinkTaskMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the number of record writers open in this task, or -1 if they're not limited
+   */
+  public int getOpenWriterCount() {
+    return openWriterLimiter != null ? openWriterLimiter.openWriters() : -1;
+  }
+
+  /**
+   * @return the number of record writers closed early to stay within the open writer limit
+   */
+  public long getWriterEvictionCount() {
+    return openWriterLimiter != null ? openWriterLimiter.evictions() : 0;
+  }
+
+  /**
+   * @return the memory the record writers of this task last reported using, 0 without a writer
+   *     memory budget
+   */
+  public long getWriterMemoryUsage() {
+    WriterMemoryManager memoryManager = storage.writerMemoryManager();
+    return memoryManager != null ? memoryManager.totalMemoryUsage() : 0;
+  }
+
+  /**
+   * @return the number of topic partitions that stay paused until another task releases the lease
+   *     on their WAL
+   */
+  public int getLeaseWaitingPartitionCount() {
+    int waiting = 0;
+    for (TopicPartitionWriter writer : topicPartitionWriters.values()) {
+      if (writer.isWaitingForLease()) {
+        waiting++;
+      }
+    }
+    return waiting;
+  }
+
   Map<String, io.confluent.connect.storage.format.RecordWriter> getWriters(TopicPartition tp) {
     return topicPartitionWriters.get(tp).getWriters();
   }
@@ -564,11 +840,7 @@ public class DataWriter {
   }
 
   private void createDir(String dir) {
-    String path = connectorConfig.url() + "/" + dir;
-    if (!storage.exists(path)) {
-      log.trace("Creating directory {}", path);
-      storage.create(path);
-    }
+    storage.ensureDirectory(connectorConfig.url() + "/" + dir);
   }
 
   private Partitioner newPartitioner(HdfsSinkConnectorConfig config)
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A {@link SinkTaskContext} that holds back the calls made while topic partitions are written on
+ * other threads and replays them on the task thread afterwards.
+ *
+ * <p>The framework's context drives the task's consumer, which must not be used concurrently.
+ * While deferring, pause, resume, offset and timeout requests are queued in the order each
+ * thread issued them, so the requests of a single topic partition keep their relative order.
+ * Outside of a deferred section every call goes straight to the framework's context. </p>
+ */
+class DeferredSinkTaskContext implements SinkTaskContext {
+  private final SinkTaskContext delegate;
+  private final Queue<Consumer<SinkTaskContext>> pending;
+  private volatile boolean deferring;
+
+  DeferredSinkTaskContext(SinkTaskContext delegate) {
+    this.delegate = delegate;
+    this.pending = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Start queuing the calls made to this context instead of applying them.
+   */
+  void startDeferring() {
+    deferring = true;
+  }
+
+  /**
+   * Stop queuing calls and apply the queued ones to the framework's context. Must be called from
+   * the task thread once all the writers started after {@link #startDeferring()} are done.
+   */
+  void stopDeferring() {
+    deferring = false;
+    Consumer<SinkTaskContext> action;
+    while ((action = pending.poll()) != null) {
+      action.accept(delegate);
+    }
+  }
+
+  @Override
+  public Map<String, String> configs() {
+    return delegate.configs();
+  }
+
+  @Override
+  public void offset(Map<TopicPartition, Long> offsets) {
+    Map<TopicPartition, Long> copy = new HashMap<>(offsets);
+    run(context -> context.offset(copy));
+  }
+
+  @Override
+  public void offset(TopicPartition tp, long offset) {
+    run(context -> context.offset(tp, offset));
+  }
+
+  @Override
+  public void timeout(long timeoutMs) {
+    run(context -> context.timeout(timeoutMs));
+  }
+
+  @Override
+  public Set<TopicPartition> assignment() {
+    return delegate.assignment();
+  }
+
+  @Override
+  public void pause(TopicPartition... partitions) {
+    TopicPartition[] copy = Arrays.copyOf(partitions, partitions.length);
+    run(context -> context.pause(copy));
+  }
+
+  @Override
+  public void resume(TopicPartition... partitions) {
+    TopicPartition[] copy = Arrays.copyOf(partitions, partitions.length);
+    run(context -> context.resume(copy));
+  }
+
+  @Override
+  public void requestCommit() {
+    run(SinkTaskContext::requestCommit);
+  }
+
+  private void run(Consumer<SinkTaskContext> action) {
+    if (deferring) {
+      pending.add(action);
+    } else {
+      action.accept(delegate);
+    }
+  }
+}
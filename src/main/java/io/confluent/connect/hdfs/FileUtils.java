@@ -20,16 +20,27 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 
 import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+import io.confluent.connect.hdfs.storage.AsyncStorage;
 import io.confluent.connect.hdfs.storage.Storage;
 
 public class FileUtils {
@@ -108,38 +119,155 @@ public class FileUtils {
       Storage storage,
       Path path,
       CommittedFileFilter filter
+  ) {
+    return fileStatusWithMaxOffset(storage, path, filter, 1);
+  }
+
+  /**
+   * Find the committed file with the latest offset below a directory.
+   *
+   * @param storage the storage
+   * @param path the directory
+   * @param filter the filter of the committed files to consider
+   * @param maxConcurrency the maximum number of directories to list at once
+   * @return the status of the file, or null if there is none
+   */
+  public static FileStatus fileStatusWithMaxOffset(
+      Storage storage,
+      Path path,
+      CommittedFileFilter filter,
+      int maxConcurrency
   ) {
     if (!storage.exists(path.toString())) {
       return null;
     }
-    long maxOffset = -1L;
-    FileStatus fileStatusWithMaxOffset = null;
-    List<FileStatus> statuses = storage.list(path.toString());
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        FileStatus fileStatus = fileStatusWithMaxOffset(storage, status.getPath(), filter);
-        if (fileStatus != null) {
-          long offset = extractOffset(fileStatus.getPath().getName());
-          if (offset > maxOffset) {
-            maxOffset = offset;
-            fileStatusWithMaxOffset = fileStatus;
-          }
+    FileStatus[] fileStatusWithMaxOffset = new FileStatus[1];
+    long[] maxOffset = {-1L};
+    walk(storage, path, maxConcurrency, (directory, statuses) -> {
+      for (FileStatus status : statuses) {
+        if (status.isDirectory()) {
+          continue;
         }
-      } else {
-        String filename = status.getPath().getName();
         log.trace("Checked for max offset: {}", status.getPath());
         if (filter.accept(status.getPath())) {
-          long offset = extractOffset(filename);
-          if (offset > maxOffset) {
-            maxOffset = offset;
-            fileStatusWithMaxOffset = status;
+          long offset = extractOffset(status.getPath().getName());
+          // Directories are listed in no particular order, break ties by path to stay stable
+          if (offset > maxOffset[0]
+              || offset == maxOffset[0]
+                 && status.getPath().compareTo(fileStatusWithMaxOffset[0].getPath()) < 0) {
+            maxOffset[0] = offset;
+            fileStatusWithMaxOffset[0] = status;
           }
         }
       }
+    });
+    return fileStatusWithMaxOffset[0];
+  }
+
+  /**
+   * Find the committed file with the latest offset below a directory, searching its
+   * subdirectories in reverse order of their names, with numbers compared by value, and stopping
+   * at the first one with a matching file. Only the newest directories are listed, but the result
+   * is only correct if offsets grow with the names of the directories, like with time based
+   * partitioners on wallclock timestamps whose path format sorts chronologically.
+   *
+   * @param storage the storage
+   * @param path the directory
+   * @param filter the filter of the committed files to consider
+   * @return the status of the file, or null if there is none
+   */
+  public static FileStatus fileStatusWithMaxOffsetNewestFirst(
+      Storage storage,
+      Path path,
+      CommittedFileFilter filter
+  ) {
+    if (!storage.exists(path.toString())) {
+      return null;
+    }
+    return fileStatusWithMaxOffsetNewestFirstImpl(storage, path, filter);
+  }
+
+  private static FileStatus fileStatusWithMaxOffsetNewestFirstImpl(
+      Storage storage,
+      Path path,
+      CommittedFileFilter filter
+  ) {
+    FileStatus fileStatusWithMaxOffset = null;
+    long maxOffset = -1L;
+    List<FileStatus> directories = new ArrayList<>();
+    for (FileStatus status : storage.list(path.toString())) {
+      if (status.isDirectory()) {
+        directories.add(status);
+      } else if (filter.accept(status.getPath())) {
+        long offset = extractOffset(status.getPath().getName());
+        if (offset > maxOffset) {
+          maxOffset = offset;
+          fileStatusWithMaxOffset = status;
+        }
+      }
+    }
+    directories.sort((a, b) -> compareDirectoryNames(b.getPath().getName(), a.getPath().getName()));
+    for (FileStatus directory : directories) {
+      FileStatus fileStatus =
+          fileStatusWithMaxOffsetNewestFirstImpl(storage, directory.getPath(), filter);
+      if (fileStatus != null) {
+        log.trace("Found newest directory with committed files: {}", directory.getPath());
+        if (extractOffset(fileStatus.getPath().getName()) > maxOffset) {
+          fileStatusWithMaxOffset = fileStatus;
+        }
+        break;
+      }
     }
     return fileStatusWithMaxOffset;
   }
 
+  /**
+   * Compare directory names with their runs of digits compared by value, so that unpadded path
+   * formats like {@code month=9} and {@code month=10} sort chronologically.
+   */
+  static int compareDirectoryNames(String a, String b) {
+    int i = 0;
+    int j = 0;
+    while (i < a.length() && j < b.length()) {
+      if (Character.isDigit(a.charAt(i)) && Character.isDigit(b.charAt(j))) {
+        int startA = skipZeros(a, i);
+        int startB = skipZeros(b, j);
+        i = skipDigits(a, startA);
+        j = skipDigits(b, startB);
+        int result = Integer.compare(i - startA, j - startB);
+        if (result == 0) {
+          result = a.substring(startA, i).compareTo(b.substring(startB, j));
+        }
+        if (result != 0) {
+          return result;
+        }
+      } else {
+        int result = Character.compare(a.charAt(i++), b.charAt(j++));
+        if (result != 0) {
+          return result;
+        }
+      }
+    }
+    int result = Integer.compare(a.length() - i, b.length() - j);
+    return result != 0 ? result : a.compareTo(b);
+  }
+
+  private static int skipZeros(String s, int index) {
+    while (index < s.length() - 1
+        && s.charAt(index) == '0'
+        && Character.isDigit(s.charAt(index + 1))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int skipDigits(String s, int index) {
+    while (index < s.length() && Character.isDigit(s.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
   /**
    * Obtain the offset of the last record that was written to the specified HDFS file.
    * @param filename the name of the HDFS file; may not be null
@@ -155,49 +283,162 @@ public class FileUtils {
     return Long.parseLong(m.group(HdfsSinkConnectorConstants.PATTERN_END_OFFSET_GROUP));
   }
 
-  private static ArrayList<FileStatus> getDirectoriesImpl(Storage storage, Path path) {
-    List<FileStatus> statuses = storage.list(path.toString());
-    ArrayList<FileStatus> result = new ArrayList<>();
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        int count = 0;
-        List<FileStatus> fileStatuses = storage.list(status.getPath().toString());
-        for (FileStatus fileStatus : fileStatuses) {
-          if (fileStatus.isDirectory()) {
-            result.addAll(getDirectoriesImpl(storage, fileStatus.getPath()));
-          } else {
-            count++;
-          }
-        }
-        if (count == fileStatuses.size()) {
-          result.add(status);
+  public static FileStatus[] getDirectories(Storage storage, Path path) throws IOException {
+    return getDirectories(storage, path, 1);
+  }
+
+  /**
+   * Find the leaf directories below a directory, the ones without subdirectories.
+   *
+   * @param storage the storage
+   * @param path the directory
+   * @param maxConcurrency the maximum number of directories to list at once
+   * @return the statuses of the leaf directories, sorted by path
+   */
+  public static FileStatus[] getDirectories(Storage storage, Path path, int maxConcurrency)
+      throws IOException {
+    List<FileStatus> result = new ArrayList<>();
+    Map<Path, FileStatus> subdirectories = new HashMap<>();
+    walk(storage, path, maxConcurrency, (directory, statuses) -> {
+      boolean leaf = true;
+      for (FileStatus status : statuses) {
+        if (status.isDirectory()) {
+          subdirectories.put(status.getPath(), status);
+          leaf = false;
         }
       }
-    }
-    return result;
+      // Each directory is listed once, after the listing of its parent that contains its status
+      FileStatus status = subdirectories.remove(directory);
+      if (leaf && status != null) {
+        result.add(status);
+      }
+    });
+    result.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+    return result.toArray(new FileStatus[result.size()]);
   }
 
-  public static FileStatus[] getDirectories(Storage storage, Path path) throws IOException {
-    ArrayList<FileStatus> result = getDirectoriesImpl(storage, path);
-    return result.toArray(new FileStatus[result.size()]);
+  public static FileStatus[] traverse(Storage storage, Path path, PathFilter filter)
+      throws IOException {
+    return traverse(storage, path, filter, 1);
   }
 
-  private static ArrayList<FileStatus> traverseImpl(Storage storage, Path path, PathFilter filter) {
+  /**
+   * Find the files below a directory, depth first in the order the directories list them.
+   *
+   * @param storage the storage
+   * @param path the directory
+   * @param filter the filter of the files to return
+   * @param maxConcurrency the maximum number of directories to list at once
+   * @return the statuses of the files
+   */
+  public static FileStatus[] traverse(
+      Storage storage,
+      Path path,
+      PathFilter filter,
+      int maxConcurrency
+  ) throws IOException {
     if (!storage.exists(path.toString())) {
-      return new ArrayList<>();
+      return new FileStatus[0];
     }
+    Map<Path, List<FileStatus>> listings = new HashMap<>();
+    walk(storage, path, maxConcurrency, listings::put);
     ArrayList<FileStatus> result = new ArrayList<>();
-    List<FileStatus> statuses = storage.list(path.toString());
-    for (FileStatus status : statuses) {
+    traverseImpl(listings, path, filter, result);
+    return result.toArray(new FileStatus[result.size()]);
+  }
+
+  private static void traverseImpl(
+      Map<Path, List<FileStatus>> listings,
+      Path path,
+      PathFilter filter,
+      List<FileStatus> result
+  ) {
+    for (FileStatus status : listings.getOrDefault(path, Collections.emptyList())) {
       if (status.isDirectory()) {
-        result.addAll(traverseImpl(storage, status.getPath(), filter));
-      } else {
-        if (filter.accept(status.getPath())) {
-          result.add(status);
+        traverseImpl(listings, status.getPath(), filter, result);
+      } else if (filter.accept(status.getPath())) {
+        result.add(status);
+      }
+    }
+  }
+
+  /**
+   * List a directory and every directory below it, once each, and pass each listing to the
+   * visitor on the calling thread. If the storage can list asynchronously, up to
+   * {@code maxConcurrency} directories are listed at once, which shortens scans of deep trees like
+   * the ones of time based partitioners. The limit protects the NameNode from a burst of listings
+   * per scan.
+   */
+  private static void walk(
+      Storage storage,
+      Path path,
+      int maxConcurrency,
+      BiConsumer<Path, List<FileStatus>> visitor
+  ) {
+    Deque<Path> pending = new ArrayDeque<>();
+    pending.add(path);
+    if (maxConcurrency <= 1 || !(storage instanceof AsyncStorage)) {
+      while (!pending.isEmpty()) {
+        Path directory = pending.poll();
+        visit(directory, storage.list(directory.toString()), pending, visitor);
+      }
+      return;
+    }
+
+    AsyncStorage asyncStorage = (AsyncStorage) storage;
+    BlockingQueue<Listing> listings = new LinkedBlockingQueue<>();
+    int inFlight = 0;
+    try {
+      while (!pending.isEmpty() || inFlight > 0) {
+        while (!pending.isEmpty() && inFlight < maxConcurrency) {
+          Path directory = pending.poll();
+          asyncStorage.listAsync(directory.toString()).whenComplete(
+              (statuses, e) -> listings.add(new Listing(directory, statuses, e))
+          );
+          ++inFlight;
+        }
+        Listing listing = listings.take();
+        --inFlight;
+        if (listing.error != null) {
+          Throwable cause = listing.error instanceof CompletionException
+                            ? listing.error.getCause()
+                            : listing.error;
+          throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new ConnectException(cause);
         }
+        visit(listing.directory, listing.statuses, pending, visitor);
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConnectException("Interrupted while listing the directories below " + path, e);
+    }
+  }
+
+  private static void visit(
+      Path directory,
+      List<FileStatus> statuses,
+      Deque<Path> pending,
+      BiConsumer<Path, List<FileStatus>> visitor
+  ) {
+    for (FileStatus status : statuses) {
+      if (status.isDirectory()) {
+        pending.add(status.getPath());
+      }
+    }
+    visitor.accept(directory, statuses);
+  }
+
+  private static final class Listing {
+    private final Path directory;
+    private final List<FileStatus> statuses;
+    private final Throwable error;
+
+    private Listing(Path directory, List<FileStatus> statuses, Throwable error) {
+      this.directory = directory;
+      this.statuses = statuses;
+      this.error = error;
     }
-    return result;
   }
 
   private static ArrayList<FileStatus> traverseImpl(FileSystem fs, Path path) throws IOException {
@@ -216,12 +457,6 @@ public class FileUtils {
     return result;
   }
 
-  public static FileStatus[] traverse(Storage storage, Path path, PathFilter filter)
-      throws IOException {
-    ArrayList<FileStatus> result = traverseImpl(storage, path, filter);
-    return result.toArray(new FileStatus[result.size()]);
-  }
-
   public static FileStatus[] traverse(FileSystem fs, Path path) throws IOException {
     ArrayList<FileStatus> result = traverseImpl(fs, path);
     return result.toArray(new FileStatus[result.size()]);
@@ -99,6 +99,236 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
           + "It must contain '${topic}' to inject the corresponding topic name.";
   private static final String HIVE_TABLE_NAME_DISPLAY = "Hive table name";
 
+  public static final String PARTITION_WRITER_THREADS_CONFIG = "partition.writer.threads";
+  public static final int PARTITION_WRITER_THREADS_DEFAULT = 1;
+  private static final String PARTITION_WRITER_THREADS_DOC =
+      "The number of threads each task uses to write its assigned topic partitions. With the "
+          + "default of 1 every topic partition is written sequentially on the task thread. "
+          + "Higher values write independent topic partitions concurrently, the records of a "
+          + "single topic partition are always written in order by one thread at a time. The "
+          + "configured partitioner must be thread-safe when this is greater than 1.";
+  private static final String PARTITION_WRITER_THREADS_DISPLAY = "Partition Writer Threads";
+
+  public static final String ROTATION_COMMIT_MAX_IN_FLIGHT_CONFIG =
+      "rotation.commit.max.in.flight";
+  public static final int ROTATION_COMMIT_MAX_IN_FLIGHT_DEFAULT = 0;
+  private static final String ROTATION_COMMIT_MAX_IN_FLIGHT_DOC =
+      "The maximum number of rotated files per topic partition that may be committing in the "
+          + "background while new records are written to fresh temp files. Commits of a topic "
+          + "partition still happen in order and its offsets only advance once a file is fully "
+          + "committed. When the limit is reached, writing to the topic partition waits for the "
+          + "oldest commit. The default of 0 commits files on the task thread.";
+  private static final String ROTATION_COMMIT_MAX_IN_FLIGHT_DISPLAY =
+      "Max In-Flight Rotation Commits";
+
+  public static final String ROTATION_COMMIT_THREADS_CONFIG = "rotation.commit.threads";
+  public static final int ROTATION_COMMIT_THREADS_DEFAULT = 1;
+  private static final String ROTATION_COMMIT_THREADS_DOC =
+      "The number of threads each task uses to commit rotated files in the background. Only "
+          + "used when ``" + ROTATION_COMMIT_MAX_IN_FLIGHT_CONFIG + "`` is greater than 0.";
+  private static final String ROTATION_COMMIT_THREADS_DISPLAY = "Rotation Commit Threads";
+
+  public static final String ROTATION_FILE_THREADS_CONFIG = "rotation.file.threads";
+  public static final int ROTATION_FILE_THREADS_DEFAULT = 1;
+  private static final String ROTATION_FILE_THREADS_DOC =
+      "The number of threads each task uses to close the files of a rotation concurrently. "
+          + "Useful when partitioners spread the records of a topic partition over many "
+          + "directories. The default of 1 closes them one after the other. The files are "
+          + "committed at once on the storage threads, see ``storage.async.threads``.";
+  private static final String ROTATION_FILE_THREADS_DISPLAY = "Rotation File Threads";
+
+  public static final String ROTATE_SIZE_BYTES_CONFIG = "rotate.size.bytes";
+  public static final long ROTATE_SIZE_BYTES_DEFAULT = -1L;
+  private static final String ROTATE_SIZE_BYTES_DOC =
+      "The size in bytes a temp file may reach before the files of a topic partition are "
+          + "committed, regardless of the number of records they hold. For Avro, JSON and String "
+          + "files this is the number of bytes written to the file, for Parquet and ORC it is the "
+          + "writer's estimate of the bytes written plus the data still buffered in memory. Set "
+          + "this close to the HDFS block size to get files of about one block. The default of -1 "
+          + "disables size-based rotation.";
+  private static final String ROTATE_SIZE_BYTES_DISPLAY = "Rotate Size (bytes)";
+
+  public static final String MAX_OPEN_WRITERS_CONFIG = "max.open.writers";
+  public static final int MAX_OPEN_WRITERS_DEFAULT = -1;
+  private static final String MAX_OPEN_WRITERS_DOC =
+      "The maximum number of temp files each task keeps open across all of its topic partitions. "
+          + "When a record needs a new file and the limit has been reached, the topic partition "
+          + "holding the least recently used file commits its files early through the WAL. The "
+          + "limit can briefly be exceeded until that topic partition is written next. Use this "
+          + "to bound the number of HDFS output streams and write buffers when partitioning on "
+          + "fields with many values. The open files and the files committed early are reported "
+          + "by the ``open-writers`` and ``writer-evictions-total`` metrics of the task. The "
+          + "default of -1 does not limit open files.";
+  private static final String MAX_OPEN_WRITERS_DISPLAY = "Max Open Writers";
+
+  public static final String WRITER_MEMORY_BUDGET_BYTES_CONFIG = "writer.memory.budget.bytes";
+  public static final long WRITER_MEMORY_BUDGET_BYTES_DEFAULT = -1L;
+  private static final String WRITER_MEMORY_BUDGET_BYTES_DOC =
+      "The memory in bytes the Parquet or ORC writers of a task may use to buffer row groups and "
+          + "stripes, shared by all of the task's open files. A file gets at most an equal share "
+          + "of the budget and what the other files leave of it, down to 1 MB. When a file can't "
+          + "get its share, the file with the largest row group or stripe is rotated, and gets "
+          + "its share once it's opened again. When the writers use more than the budget, the "
+          + "ORC writer buffering the most data writes its stripe early. The "
+          + "default of -1 lets every writer buffer a full 256 MB Parquet row group or ORC stripe "
+          + "of the configured size.";
+  private static final String WRITER_MEMORY_BUDGET_BYTES_DISPLAY = "Writer Memory Budget (bytes)";
+
+  public static final String PARTITION_BUFFER_MAX_RECORDS_CONFIG = "partition.buffer.max.records";
+  public static final int PARTITION_BUFFER_MAX_RECORDS_DEFAULT = -1;
+  private static final String PARTITION_BUFFER_MAX_RECORDS_DOC =
+      "The maximum number of records buffered per topic partition before they're written. When "
+          + "the buffer is full, the topic partition is paused and rewound to the first record "
+          + "that didn't fit, which is consumed again once the buffer has been written. The "
+          + "default of -1 does not limit the number of buffered records.";
+  private static final String PARTITION_BUFFER_MAX_RECORDS_DISPLAY =
+      "Max Buffered Records Per Partition";
+
+  public static final String PARTITION_BUFFER_MAX_BYTES_CONFIG = "partition.buffer.max.bytes";
+  public static final long PARTITION_BUFFER_MAX_BYTES_DEFAULT = -1L;
+  private static final String PARTITION_BUFFER_MAX_BYTES_DOC =
+      "The maximum estimated size in bytes of the records buffered per topic partition before "
+          + "they're written. Behaves like ``" + PARTITION_BUFFER_MAX_RECORDS_CONFIG + "`` and "
+          + "the two can be combined. The size of a record is estimated from its key and value. "
+          + "The default of -1 does not limit the size of buffered records.";
+  private static final String PARTITION_BUFFER_MAX_BYTES_DISPLAY =
+      "Max Buffered Bytes Per Partition";
+
+  public static final String TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_CONFIG =
+      "temp.file.checkpoint.interval.records";
+  public static final int TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DEFAULT = -1;
+  private static final String TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DOC =
+      "The number of records written to a topic partition after which its open temp files are "
+          + "flushed and their lengths recorded in the WAL. After a failure, the temp files are "
+          + "truncated to the last recorded lengths and committed, and consumption resumes from "
+          + "there, instead of discarding them and consuming their records again. Only applies to "
+          + "the Avro, JSON and String formats. The default of -1 disables checkpoints.";
+  private static final String TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DISPLAY =
+      "Temp File Checkpoint Interval (records)";
+
+  public static final String DIRECTORY_CACHE_MAX_ENTRIES_CONFIG = "directory.cache.max.entries";
+  public static final int DIRECTORY_CACHE_MAX_ENTRIES_DEFAULT = 10000;
+  private static final String DIRECTORY_CACHE_MAX_ENTRIES_DOC =
+      "The maximum number of directories a task remembers to exist, saving the calls to the "
+          + "NameNode that check for them before files are committed into them. Directories "
+          + "removed outside of the connector are created again when committing into them fails. "
+          + "The calls saved are reported by the ``directory-checks-saved-total`` metric of the "
+          + "task. 0 disables the cache.";
+  private static final String DIRECTORY_CACHE_MAX_ENTRIES_DISPLAY = "Directory Cache Max Entries";
+
+  public static final String STORAGE_ASYNC_THREADS_CONFIG = "storage.async.threads";
+  public static final int STORAGE_ASYNC_THREADS_DEFAULT = 4;
+  private static final String STORAGE_ASYNC_THREADS_DOC =
+      "The number of threads each task uses to issue metadata operations, like renames and "
+          + "existence checks, to HDFS concurrently. Used when committing many files at once, "
+          + "like when applying the WAL.";
+  private static final String STORAGE_ASYNC_THREADS_DISPLAY = "Storage Async Threads";
+
+  public static final String DIRECTORY_LISTING_MAX_CONCURRENCY_CONFIG =
+      "directory.listing.max.concurrency";
+  public static final int DIRECTORY_LISTING_MAX_CONCURRENCY_DEFAULT = 1;
+  private static final String DIRECTORY_LISTING_MAX_CONCURRENCY_DOC =
+      "The maximum number of directories listed at once when scanning the directories of a "
+          + "topic, like when recovering offsets without a WAL or syncing with Hive. Listings run "
+          + "on the storage async threads, so they're also limited by ``"
+          + STORAGE_ASYNC_THREADS_CONFIG + "``. 1 lists one directory at a time.";
+  private static final String DIRECTORY_LISTING_MAX_CONCURRENCY_DISPLAY =
+      "Directory Listing Max Concurrency";
+
+  public static final String WAL_SYNC_MODE_CONFIG = "wal.sync.mode";
+  public static final String WAL_SYNC_MODE_HSYNC = "hsync";
+  public static final String WAL_SYNC_MODE_HFLUSH = "hflush";
+  public static final String WAL_SYNC_MODE_DEFAULT = WAL_SYNC_MODE_HSYNC;
+  private static final String WAL_SYNC_MODE_DOC =
+      "How each block of WAL entries is made durable before its files are committed. ``hsync`` "
+          + "waits for the DataNodes to write the block to disk. ``hflush`` only waits for them "
+          + "to receive it, which is faster but may lose the block if all of them fail at once. "
+          + "A lost block leaves its files uncommitted and their records are written again.";
+  private static final String WAL_SYNC_MODE_DISPLAY = "WAL Sync Mode";
+
+  public static final String WAL_FORMAT_VERSION_CONFIG = "wal.format.version";
+  public static final int WAL_FORMAT_VERSION_DEFAULT = 0;
+  private static final String WAL_FORMAT_VERSION_DOC =
+      "The format of the WAL files the connector creates. ``0`` is the original format. ``1`` "
+          + "writes names relative to the topics and logs directories, with each directory "
+          + "written once per sync interval, and checks each block with a checksum. Since temp "
+          + "file names are random UUIDs, this about halves the size of a WAL, rather than "
+          + "reducing it tenfold. Files are appended to in the format they were created in, so "
+          + "a WAL switches to the configured format once it's truncated. Upgrading is one-way: "
+          + "connector versions that only know format ``0`` can't read WAL files written in "
+          + "format ``1``, so the connector can't be downgraded once they exist.";
+  private static final String WAL_FORMAT_VERSION_DISPLAY = "WAL Format Version";
+
+  public static final String WAL_TASK_ENABLED_CONFIG = "wal.task.enabled";
+  public static final boolean WAL_TASK_ENABLED_DEFAULT = false;
+  private static final String WAL_TASK_ENABLED_DOC =
+      "Whether each task writes a single WAL for all of its topic partitions, instead of one WAL "
+          + "per topic partition. A task holds the lease of its WAL only, and syncs it once per "
+          + "block. A task taking a topic partition over appends a fence to its WAL, recovers the "
+          + "leases of the WALs of the tasks that wrote the topic partition before, and reads "
+          + "them, which a topic partition staying with its task is spared. The WALs of topic "
+          + "partitions written before this was enabled are applied on recovery. Checkpoints of "
+          + "temp files are not supported by the task WAL.";
+  private static final String WAL_TASK_ENABLED_DISPLAY = "Task WAL Enabled";
+
+  public static final String WAL_TASK_COMPACTION_RECORDS_CONFIG = "wal.task.compaction.records";
+  public static final int WAL_TASK_COMPACTION_RECORDS_DEFAULT = 100000;
+  private static final String WAL_TASK_COMPACTION_RECORDS_DOC =
+      "The number of entries appended to the task WAL after which it's compacted, keeping only "
+          + "the entries still needed for recovery.";
+  private static final String WAL_TASK_COMPACTION_RECORDS_DISPLAY = "Task WAL Compaction Records";
+
+  public static final String RECOVERY_THREADS_CONFIG = "recovery.threads";
+  public static final int RECOVERY_THREADS_DEFAULT = 1;
+  private static final String RECOVERY_THREADS_DOC =
+      "The number of threads each task uses to recover its assigned topic partitions from their "
+          + "WALs and committed files when it starts or is assigned new topic partitions. With 1, "
+          + "topic partitions are recovered one after another.";
+  private static final String RECOVERY_THREADS_DISPLAY = "Recovery Threads";
+
+  public static final String WAL_SEGMENT_BYTES_CONFIG = "wal.segment.bytes";
+  public static final long WAL_SEGMENT_BYTES_DEFAULT = 0L;
+  private static final String WAL_SEGMENT_BYTES_DOC =
+      "The size at which the WAL of a topic partition is rolled over to a new segment. Segments "
+          + "are deleted in the background once all of their files were committed, instead of "
+          + "renaming the WAL each time the topic partition is recovered. 0 disables segments. "
+          + "Not used with the task WAL. Checkpoints of temp files are not supported by "
+          + "segmented WALs.";
+  private static final String WAL_SEGMENT_BYTES_DISPLAY = "WAL Segment Bytes";
+
+  public static final String WAL_SEGMENT_MS_CONFIG = "wal.segment.ms";
+  public static final long WAL_SEGMENT_MS_DEFAULT = 60 * 60 * 1000L;
+  private static final String WAL_SEGMENT_MS_DOC =
+      "The time after which a segment of the WAL of a topic partition is rolled over to a new "
+          + "segment even if it hasn't reached ``" + WAL_SEGMENT_BYTES_CONFIG + "``. Only used "
+          + "when segments are enabled. 0 only rolls segments over by size.";
+  private static final String WAL_SEGMENT_MS_DISPLAY = "WAL Segment Milliseconds";
+
+  public static final String COMMITTED_OFFSET_FILE_ENABLED_CONFIG =
+      "committed.offset.file.enabled";
+  public static final boolean COMMITTED_OFFSET_FILE_ENABLED_DEFAULT = false;
+  private static final String COMMITTED_OFFSET_FILE_ENABLED_DOC =
+      "Whether each topic partition keeps a file next to its WAL naming its last committed file, "
+          + "which is replaced after each commit. When the WAL has no offset, or when the schema "
+          + "of the last committed file is needed, the file is used instead of listing every "
+          + "directory of the topic. The directories are still listed if the file is missing or "
+          + "names a file that no longer exists.";
+  private static final String COMMITTED_OFFSET_FILE_ENABLED_DISPLAY =
+      "Committed Offset File Enabled";
+
+  public static final String OFFSET_SEARCH_NEWEST_FIRST_CONFIG = "offset.search.newest.first";
+  public static final boolean OFFSET_SEARCH_NEWEST_FIRST_DEFAULT = false;
+  private static final String OFFSET_SEARCH_NEWEST_FIRST_DOC =
+      "Whether the directories of a topic are searched newest first for the last committed file "
+          + "of a topic partition, when the partitioner is time based and uses the Wallclock "
+          + "timestamp extractor. Directories are searched in reverse order of their names, with "
+          + "numbers compared by value, and the search stops at the first one with files of the "
+          + "topic partition, instead of listing every directory of the topic. This assumes that "
+          + "the path format sorts chronologically, like the default ones. Record timestamps can "
+          + "go back in time, so other timestamp extractors and partitioners list every "
+          + "directory.";
+  private static final String OFFSET_SEARCH_NEWEST_FIRST_DISPLAY = "Offset Search Newest First";
+
   // Storage group
   public static final String TOPIC_CAPTURE_GROUPS_REGEX_CONFIG = "topic.capture.groups.regex";
   public static final String TOPIC_CAPTURE_GROUPS_REGEX_DISPLAY = "Topic Capture Groups Regex";
@@ -264,6 +494,289 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
               Width.SHORT,
               HIVE_TABLE_NAME_DISPLAY
       );
+
+      configDef.define(
+          PARTITION_WRITER_THREADS_CONFIG,
+          Type.INT,
+          PARTITION_WRITER_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          PARTITION_WRITER_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          PARTITION_WRITER_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          ROTATION_COMMIT_MAX_IN_FLIGHT_CONFIG,
+          Type.INT,
+          ROTATION_COMMIT_MAX_IN_FLIGHT_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          ROTATION_COMMIT_MAX_IN_FLIGHT_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          ROTATION_COMMIT_MAX_IN_FLIGHT_DISPLAY
+      );
+
+      configDef.define(
+          ROTATION_COMMIT_THREADS_CONFIG,
+          Type.INT,
+          ROTATION_COMMIT_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          ROTATION_COMMIT_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          ROTATION_COMMIT_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          ROTATION_FILE_THREADS_CONFIG,
+          Type.INT,
+          ROTATION_FILE_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          ROTATION_FILE_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          ROTATION_FILE_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          ROTATE_SIZE_BYTES_CONFIG,
+          Type.LONG,
+          ROTATE_SIZE_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.MEDIUM,
+          ROTATE_SIZE_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.MEDIUM,
+          ROTATE_SIZE_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          MAX_OPEN_WRITERS_CONFIG,
+          Type.INT,
+          MAX_OPEN_WRITERS_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.LOW,
+          MAX_OPEN_WRITERS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          MAX_OPEN_WRITERS_DISPLAY
+      );
+
+      configDef.define(
+          WRITER_MEMORY_BUDGET_BYTES_CONFIG,
+          Type.LONG,
+          WRITER_MEMORY_BUDGET_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.LOW,
+          WRITER_MEMORY_BUDGET_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.MEDIUM,
+          WRITER_MEMORY_BUDGET_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          PARTITION_BUFFER_MAX_RECORDS_CONFIG,
+          Type.INT,
+          PARTITION_BUFFER_MAX_RECORDS_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.LOW,
+          PARTITION_BUFFER_MAX_RECORDS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          PARTITION_BUFFER_MAX_RECORDS_DISPLAY
+      );
+
+      configDef.define(
+          PARTITION_BUFFER_MAX_BYTES_CONFIG,
+          Type.LONG,
+          PARTITION_BUFFER_MAX_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.LOW,
+          PARTITION_BUFFER_MAX_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.MEDIUM,
+          PARTITION_BUFFER_MAX_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_CONFIG,
+          Type.INT,
+          TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DEFAULT,
+          ConfigDef.Range.atLeast(-1),
+          Importance.LOW,
+          TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_DISPLAY
+      );
+
+      configDef.define(
+          DIRECTORY_CACHE_MAX_ENTRIES_CONFIG,
+          Type.INT,
+          DIRECTORY_CACHE_MAX_ENTRIES_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          DIRECTORY_CACHE_MAX_ENTRIES_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          DIRECTORY_CACHE_MAX_ENTRIES_DISPLAY
+      );
+
+      configDef.define(
+          STORAGE_ASYNC_THREADS_CONFIG,
+          Type.INT,
+          STORAGE_ASYNC_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          STORAGE_ASYNC_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          STORAGE_ASYNC_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          DIRECTORY_LISTING_MAX_CONCURRENCY_CONFIG,
+          Type.INT,
+          DIRECTORY_LISTING_MAX_CONCURRENCY_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          DIRECTORY_LISTING_MAX_CONCURRENCY_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          DIRECTORY_LISTING_MAX_CONCURRENCY_DISPLAY
+      );
+
+      configDef.define(
+          WAL_SYNC_MODE_CONFIG,
+          Type.STRING,
+          WAL_SYNC_MODE_DEFAULT,
+          ConfigDef.ValidString.in(WAL_SYNC_MODE_HSYNC, WAL_SYNC_MODE_HFLUSH),
+          Importance.LOW,
+          WAL_SYNC_MODE_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_SYNC_MODE_DISPLAY
+      );
+
+      configDef.define(
+          WAL_FORMAT_VERSION_CONFIG,
+          Type.INT,
+          WAL_FORMAT_VERSION_DEFAULT,
+          ConfigDef.Range.between(0, 1),
+          Importance.LOW,
+          WAL_FORMAT_VERSION_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_FORMAT_VERSION_DISPLAY
+      );
+
+      configDef.define(
+          WAL_TASK_ENABLED_CONFIG,
+          Type.BOOLEAN,
+          WAL_TASK_ENABLED_DEFAULT,
+          Importance.LOW,
+          WAL_TASK_ENABLED_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_TASK_ENABLED_DISPLAY
+      );
+
+      configDef.define(
+          WAL_TASK_COMPACTION_RECORDS_CONFIG,
+          Type.INT,
+          WAL_TASK_COMPACTION_RECORDS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          WAL_TASK_COMPACTION_RECORDS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_TASK_COMPACTION_RECORDS_DISPLAY
+      );
+
+      configDef.define(
+          RECOVERY_THREADS_CONFIG,
+          Type.INT,
+          RECOVERY_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          RECOVERY_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          RECOVERY_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          WAL_SEGMENT_BYTES_CONFIG,
+          Type.LONG,
+          WAL_SEGMENT_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          WAL_SEGMENT_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_SEGMENT_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          WAL_SEGMENT_MS_CONFIG,
+          Type.LONG,
+          WAL_SEGMENT_MS_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          WAL_SEGMENT_MS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_SEGMENT_MS_DISPLAY
+      );
+
+      configDef.define(
+          COMMITTED_OFFSET_FILE_ENABLED_CONFIG,
+          Type.BOOLEAN,
+          COMMITTED_OFFSET_FILE_ENABLED_DEFAULT,
+          Importance.LOW,
+          COMMITTED_OFFSET_FILE_ENABLED_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          COMMITTED_OFFSET_FILE_ENABLED_DISPLAY
+      );
+
+      configDef.define(
+          OFFSET_SEARCH_NEWEST_FIRST_CONFIG,
+          Type.BOOLEAN,
+          OFFSET_SEARCH_NEWEST_FIRST_DEFAULT,
+          Importance.LOW,
+          OFFSET_SEARCH_NEWEST_FIRST_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          OFFSET_SEARCH_NEWEST_FIRST_DISPLAY
+      );
     }
 
     {
@@ -507,6 +1020,94 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
     return getString(LOGS_DIR_CONFIG);
   }
 
+  public int partitionWriterThreads() {
+    return getInt(PARTITION_WRITER_THREADS_CONFIG);
+  }
+
+  public int rotationCommitMaxInFlight() {
+    return getInt(ROTATION_COMMIT_MAX_IN_FLIGHT_CONFIG);
+  }
+
+  public int rotationCommitThreads() {
+    return getInt(ROTATION_COMMIT_THREADS_CONFIG);
+  }
+
+  public int rotationFileThreads() {
+    return getInt(ROTATION_FILE_THREADS_CONFIG);
+  }
+
+  public long rotateSizeBytes() {
+    return getLong(ROTATE_SIZE_BYTES_CONFIG);
+  }
+
+  public int maxOpenWriters() {
+    return getInt(MAX_OPEN_WRITERS_CONFIG);
+  }
+
+  public long writerMemoryBudgetBytes() {
+    return getLong(WRITER_MEMORY_BUDGET_BYTES_CONFIG);
+  }
+
+  public int partitionBufferMaxRecords() {
+    return getInt(PARTITION_BUFFER_MAX_RECORDS_CONFIG);
+  }
+
+  public long partitionBufferMaxBytes() {
+    return getLong(PARTITION_BUFFER_MAX_BYTES_CONFIG);
+  }
+
+  public int tempFileCheckpointIntervalRecords() {
+    return getInt(TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_CONFIG);
+  }
+
+  public int directoryCacheMaxEntries() {
+    return getInt(DIRECTORY_CACHE_MAX_ENTRIES_CONFIG);
+  }
+
+  public int storageAsyncThreads() {
+    return getInt(STORAGE_ASYNC_THREADS_CONFIG);
+  }
+
+  public int directoryListingMaxConcurrency() {
+    return getInt(DIRECTORY_LISTING_MAX_CONCURRENCY_CONFIG);
+  }
+
+  public String walSyncMode() {
+    return getString(WAL_SYNC_MODE_CONFIG);
+  }
+
+  public int walFormatVersion() {
+    return getInt(WAL_FORMAT_VERSION_CONFIG);
+  }
+
+  public boolean walTaskEnabled() {
+    return getBoolean(WAL_TASK_ENABLED_CONFIG);
+  }
+
+  public int walTaskCompactionRecords() {
+    return getInt(WAL_TASK_COMPACTION_RECORDS_CONFIG);
+  }
+
+  public int recoveryThreads() {
+    return getInt(RECOVERY_THREADS_CONFIG);
+  }
+
+  public long walSegmentBytes() {
+    return getLong(WAL_SEGMENT_BYTES_CONFIG);
+  }
+
+  public long walSegmentMs() {
+    return getLong(WAL_SEGMENT_MS_CONFIG);
+  }
+
+  public boolean committedOffsetFileEnabled() {
+    return getBoolean(COMMITTED_OFFSET_FILE_ENABLED_CONFIG);
+  }
+
+  public boolean offsetSearchNewestFirst() {
+    return getBoolean(OFFSET_SEARCH_NEWEST_FIRST_CONFIG);
+  }
+
   public String name() {
     return originalsStrings().getOrDefault("name", "HDFS-sink");
   }
@@ -166,7 +166,7 @@ public class HdfsSinkTask extends SinkTask {
   public void close(Collection<TopicPartition> partitions) {
     log.debug("Closing HDFS Sink Task {}", connectorNameAndTaskId);
     if (hdfsWriter != null) {
-      hdfsWriter.close();
+      hdfsWriter.close(partitions);
     }
   }
 
@@ -179,9 +179,7 @@ public class HdfsSinkTask extends SinkTask {
   }
 
   private void recover(Set<TopicPartition> assignment) {
-    for (TopicPartition tp : assignment) {
-      hdfsWriter.recover(tp);
-    }
+    hdfsWriter.recover(assignment);
   }
 
   private void syncWithHive() throws ConnectException {
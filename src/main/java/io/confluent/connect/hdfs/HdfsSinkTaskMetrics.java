@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Gauge;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.Time;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The metrics of a task, registered in JMX as
+ * {@code kafka.connect.hdfs:type=hdfs-sink-task-metrics,connector=<name>,task=<id>}.
+ *
+ * <p>Gauges are read by JMX threads, so their values must be safe to read from any thread. </p>
+ */
+class HdfsSinkTaskMetrics implements AutoCloseable {
+  static final String JMX_PREFIX = "kafka.connect.hdfs";
+  static final String GROUP = "hdfs-sink-task-metrics";
+
+  private final Metrics metrics;
+  private final Map<String, String> tags;
+
+  HdfsSinkTaskMetrics(String connector, int task) {
+    this.tags = new LinkedHashMap<>();
+    tags.put("connector", connector);
+    tags.put("task", String.valueOf(task));
+    this.metrics = new Metrics(
+        new MetricConfig(),
+        Collections.singletonList(new JmxReporter()),
+        Time.SYSTEM,
+        new KafkaMetricsContext(JMX_PREFIX)
+    );
+  }
+
+  <T> void addGauge(String name, String description, Supplier<T> value) {
+    MetricName metricName = metrics.metricName(name, GROUP, description, tags);
+    metrics.addMetric(metricName, (Gauge<T>) (config, now) -> value.get());
+  }
+
+  /**
+   * @return the current value of a metric, or null if it isn't registered
+   */
+  Object value(String name) {
+    KafkaMetric metric = metrics.metric(metrics.metricName(name, GROUP, tags));
+    return metric != null ? metric.metricValue() : null;
+  }
+
+  @Override
+  public void close() {
+    metrics.close();
+  }
+}
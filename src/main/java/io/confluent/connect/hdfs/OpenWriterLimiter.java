@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the record writers that are open across all topic partitions of a task, in
+ * least recently used order, and limits how many of them may be open at once.
+ *
+ * <p>When a topic partition needs a new writer and the limit has been reached, the topic partition
+ * owning the least recently used writer is asked to rotate. Its files are then closed and
+ * committed through the regular WAL path the next time it's written. The topic partition that
+ * needs the writer rotates as well if it holds any, or waits for a writer to be freed otherwise,
+ * so the limit is never exceeded. A topic partition's files are
+ * always committed together, because its committed offset is recovered from the newest committed
+ * file and committing a single file early could skip the records of the others. </p>
+ *
+ * <p>All methods may be called from the task thread, partition writer threads and commit
+ * threads. </p>
+ */
+class OpenWriterLimiter {
+  private static final Logger log = LoggerFactory.getLogger(OpenWriterLimiter.class);
+
+  private final int maxOpenWriters;
+  // Access ordered, so the least recently used writer comes first
+  private final LinkedHashMap<Map.Entry<TopicPartition, String>, Boolean> writers;
+  private final Map<TopicPartition, Integer> openPerTopicPartition;
+  private final Set<TopicPartition> evictionRequested;
+  private long evictions;
+
+  OpenWriterLimiter(int maxOpenWriters) {
+    this.maxOpenWriters = maxOpenWriters;
+    this.writers = new LinkedHashMap<>(16, 0.75f, true);
+    this.openPerTopicPartition = new HashMap<>();
+    this.evictionRequested = new HashSet<>();
+  }
+
+  /**
+   * Check whether a new writer may be opened, and if so account for it as open. If the limit has
+   * been reached, the topic partition owning the least recently used writer is asked to rotate.
+   *
+   * @param tp the topic partition that needs a new writer
+   * @param encodedPartition the encoded partition of the writer
+   * @return true if the writer may be opened right away
+   */
+  synchronized boolean tryAcquire(TopicPartition tp, String encodedPartition) {
+    if (writers.containsKey(new SimpleImmutableEntry<>(tp, encodedPartition))
+        || writers.size() < maxOpenWriters) {
+      opened(tp, encodedPartition);
+      return true;
+    }
+    Iterator<Map.Entry<TopicPartition, String>> eldest = writers.keySet().iterator();
+    if (eldest.hasNext()) {
+      TopicPartition owner = eldest.next().getKey();
+      if (evictionRequested.add(owner)) {
+        log.info(
+            "{} writers are open, the limit is {}. Rotating {} to free the writers it holds for {}",
+            writers.size(),
+            maxOpenWriters,
+            owner,
+            tp
+        );
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the topic partition should rotate to free its writers
+   */
+  synchronized boolean isEvictionRequested(TopicPartition tp) {
+    return evictionRequested.contains(tp);
+  }
+
+  synchronized void opened(TopicPartition tp, String encodedPartition) {
+    if (writers.put(new SimpleImmutableEntry<>(tp, encodedPartition), Boolean.TRUE) == null) {
+      openPerTopicPartition.merge(tp, 1, Integer::sum);
+    }
+  }
+
+  synchronized void used(TopicPartition tp, String encodedPartition) {
+    writers.get(new SimpleImmutableEntry<>(tp, encodedPartition));
+  }
+
+  synchronized void closed(TopicPartition tp, String encodedPartition) {
+    if (writers.remove(new SimpleImmutableEntry<>(tp, encodedPartition)) == null) {
+      return;
+    }
+    if (evictionRequested.contains(tp)) {
+      evictions++;
+    }
+    Integer remaining = openPerTopicPartition.merge(tp, -1, Integer::sum);
+    if (remaining <= 0) {
+      openPerTopicPartition.remove(tp);
+      evictionRequested.remove(tp);
+    }
+  }
+
+  /**
+   * Forget all writers of a topic partition, for writers that are dropped without being closed.
+   */
+  synchronized void closedAll(TopicPartition tp) {
+    writers.keySet().removeIf(key -> key.getKey().equals(tp));
+    openPerTopicPartition.remove(tp);
+    evictionRequested.remove(tp);
+  }
+
+  /**
+   * @return the number of writers currently open in the task
+   */
+  synchronized int openWriters() {
+    return writers.size();
+  }
+
+  /**
+   * @return the number of writers closed early because the limit was reached
+   */
+  synchronized long evictions() {
+    return evictions;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import io.confluent.connect.storage.format.RecordWriter;
+
+/**
+ * A {@link RecordWriter} that knows how large the file it writes has grown, which is what
+ * size-based rotation is decided on.
+ */
+public interface SizeAwareRecordWriter extends RecordWriter {
+
+  /**
+   * The number of bytes written so far. Writers that buffer data in memory before writing it out,
+   * like the columnar formats, include their estimate of the buffered data.
+   *
+   * @return the size of the file in bytes, 0 if nothing was written yet
+   */
+  long size();
+
+  /**
+   * Whether the writer asks for its file to be rotated, so that the memory it buffers can be given
+   * to other writers. Writers that can't write out their buffered data early ask for this.
+   *
+   * @return true if the file should be rotated even though no rotation condition is met
+   */
+  default boolean isRotationRequested() {
+    return false;
+  }
+}
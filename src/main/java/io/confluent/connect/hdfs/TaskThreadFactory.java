@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the threads of the executors of a task {@code hdfs-sink-<connector>-<task>-<role>-<n>},
+ * so they can be told apart in thread dumps, and makes them daemons, so a task that isn't stopped
+ * doesn't keep the worker alive.
+ */
+class TaskThreadFactory implements ThreadFactory {
+  private final String prefix;
+  private final AtomicInteger threads = new AtomicInteger();
+
+  TaskThreadFactory(HdfsSinkConnectorConfig config, String role) {
+    this.prefix = String.format("hdfs-sink-%s-%s-%s-", config.name(), config.getTaskId(), role);
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, prefix + threads.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
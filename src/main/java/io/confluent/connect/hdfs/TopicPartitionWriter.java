@@ -31,16 +31,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import io.confluent.common.utils.Time;
 import io.confluent.connect.avro.AvroData;
@@ -51,13 +59,14 @@ import io.confluent.connect.hdfs.hive.HiveMetaStore;
 import io.confluent.connect.hdfs.hive.HiveUtil;
 import io.confluent.connect.hdfs.partitioner.Partitioner;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
+import io.confluent.connect.hdfs.wal.FSWAL;
+import io.confluent.connect.hdfs.wal.WAL;
 import io.confluent.connect.storage.StorageSinkConnectorConfig;
 import io.confluent.connect.storage.hive.HiveConfig;
 import io.confluent.connect.storage.partitioner.PartitionerConfig;
 import io.confluent.connect.storage.partitioner.TimeBasedPartitioner;
 import io.confluent.connect.storage.partitioner.TimestampExtractor;
 import io.confluent.connect.storage.schema.StorageSchemaCompatibility;
-import io.confluent.connect.storage.wal.WAL;
 import io.confluent.connect.storage.wal.FilePathOffset;
 
 public class TopicPartitionWriter {
@@ -71,20 +80,32 @@ public class TopicPartitionWriter {
   private final Time time;
   private final HdfsStorage storage;
   private final WAL wal;
+  private final CommittedOffsetFile committedOffsetFile;
   private final Map<String, String> tempFiles;
   private final Map<String, io.confluent.connect.storage.format.RecordWriter> writers;
   private final TopicPartition tp;
   private final Partitioner partitioner;
   private final TimestampExtractor timestampExtractor;
   private final boolean isWallclockBased;
+  // Whether the latest committed file is searched for in the newest time directories first
+  private final boolean offsetSearchNewestFirst;
   private final String url;
   private final String topicsDir;
   private State state;
   private final Queue<SinkRecord> buffer;
+  private final int maxBufferedRecords;
+  private final long maxBufferedBytes;
+  private long bufferedBytes;
+  // Offset the consumer was rewound to when the buffer was full, records from there on are dropped
+  // until the buffer has been written
+  private long firstDroppedOffset = -1;
   private boolean recovered;
   private final SinkTaskContext context;
   private int recordCounter;
   private final int flushSize;
+  // Size of the largest temp file of the current rotation, only tracked for size-based rotation
+  private long largestTempFileSize;
+  private final long rotateSizeBytes;
   private final long rotateIntervalMs;
   private Long lastRotate;
   private final long rotateScheduleIntervalMs;
@@ -97,14 +118,23 @@ public class TopicPartitionWriter {
   private final RecordWriterProvider writerProvider;
   private final HdfsSinkConnectorConfig connectorConfig;
   private final AvroData avroData;
-  private final Set<String> appended;
   private long offset;
   private final Map<String, Long> startOffsets;
   private final Map<String, Long> endOffsets;
+  // The block last appended to the WAL, whose files commitFile() commits
+  private Map<String, String> walBlock;
   private final long timeoutMs;
   private long failureTime;
+  // When recovery started waiting for another task to release the lease on the WAL, or -1. Read by
+  // the task metrics from JMX threads
+  private volatile long leaseWaitStartTime;
   private final StorageSchemaCompatibility compatibility;
   private Schema currentSchema;
+  // The value schema of the records written to the open temp files
+  private Schema writtenSchema;
+  // The value schema of the last committed file, valid while the offset is committedSchemaOffset
+  private Schema committedSchema;
+  private long committedSchemaOffset;
   private final String extension;
   private final DateTimeZone timeZone;
   private final String hiveDatabase;
@@ -116,6 +146,17 @@ public class TopicPartitionWriter {
   private final Queue<Future<Void>> hiveUpdateFutures;
   private final Set<String> hivePartitions;
   private final String hiveTableName;
+  // Rotated files waiting to be committed in the background, oldest first. Only used when
+  // rotation.commit.max.in.flight is greater than 0.
+  private final ExecutorService commitExecutor;
+  private final int maxInFlightCommits;
+  private final Deque<PendingCommit> pendingCommits;
+  private CompletableFuture<Void> lastCommit;
+  private final OpenWriterLimiter openWriterLimiter;
+  // Closes and commits the files of one rotation concurrently, null to do so one after the other
+  private final ExecutorService fileExecutor;
+  private final int checkpointIntervalRecords;
+  private int recordsSinceCheckpoint;
 
   public TopicPartitionWriter(
       TopicPartition tp,
@@ -143,6 +184,9 @@ public class TopicPartitionWriter {
         null,
         null,
         null,
+        null,
+        null,
+        null,
         time,
         tp.topic()
     );
@@ -164,6 +208,9 @@ public class TopicPartitionWriter {
           schemaFileReader,
       ExecutorService executorService,
       Queue<Future<Void>> hiveUpdateFutures,
+      ExecutorService commitExecutor,
+      OpenWriterLimiter openWriterLimiter,
+      ExecutorService fileExecutor,
       Time time,
       String hiveTableName
   ) {
@@ -177,23 +224,29 @@ public class TopicPartitionWriter {
     this.newWriterProvider = newWriterProvider;
     this.partitioner = partitioner;
     TimestampExtractor timestampExtractor = null;
+    boolean isTimeBased = false;
     if (partitioner instanceof DataWriter.PartitionerWrapper) {
       io.confluent.connect.storage.partitioner.Partitioner<?> inner =
           ((DataWriter.PartitionerWrapper) partitioner).partitioner;
       if (TimeBasedPartitioner.class.isAssignableFrom(inner.getClass())) {
         timestampExtractor = ((TimeBasedPartitioner) inner).getTimestampExtractor();
+        isTimeBased = true;
       }
     }
     this.timestampExtractor = timestampExtractor != null ? timestampExtractor : WALLCLOCK;
     this.isWallclockBased = TimeBasedPartitioner.WallclockTimestampExtractor.class.isAssignableFrom(
         this.timestampExtractor.getClass()
     );
+    // Record timestamps can go back in time, so the newest directory may not hold the latest offset
+    this.offsetSearchNewestFirst = isTimeBased && isWallclockBased
+        && config.offsetSearchNewestFirst();
     this.url = storage.url();
     this.connectorConfig = storage.conf();
     this.schemaFileReader = schemaFileReader;
 
     topicsDir = config.getTopicsDirFromTopic(tp.topic());
     flushSize = config.getInt(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG);
+    rotateSizeBytes = config.rotateSizeBytes();
     rotateIntervalMs = config.getLong(HdfsSinkConnectorConfig.ROTATE_INTERVAL_MS_CONFIG);
     rotateScheduleIntervalMs = config.getLong(HdfsSinkConnectorConfig
         .ROTATE_SCHEDULE_INTERVAL_MS_CONFIG);
@@ -203,17 +256,23 @@ public class TopicPartitionWriter {
 
     String logsDir = config.getLogsDirFromTopic(tp.topic());
     wal = storage.wal(logsDir, tp);
+    committedOffsetFile = config.committedOffsetFileEnabled()
+                          ? new CommittedOffsetFile(storage, avroData, logsDir, tp)
+                          : null;
 
     buffer = new LinkedList<>();
+    maxBufferedRecords = config.partitionBufferMaxRecords();
+    maxBufferedBytes = config.partitionBufferMaxBytes();
     writers = new HashMap<>();
     tempFiles = new HashMap<>();
-    appended = new HashSet<>();
     startOffsets = new HashMap<>();
     endOffsets = new HashMap<>();
     state = State.RECOVERY_STARTED;
     failureTime = -1L;
+    leaseWaitStartTime = -1L;
     // The next offset to consume after the last commit (one more than last offset written to HDFS)
     offset = -1L;
+    committedSchemaOffset = -1L;
     if (writerProvider != null) {
       extension = writerProvider.getExtension();
     } else if (newWriterProvider != null) {
@@ -240,6 +299,16 @@ public class TopicPartitionWriter {
     this.hiveUpdateFutures = hiveUpdateFutures;
     hivePartitions = new HashSet<>();
 
+    this.commitExecutor = commitExecutor;
+    maxInFlightCommits = commitExecutor != null ? config.rotationCommitMaxInFlight() : 0;
+    pendingCommits = new ArrayDeque<>();
+    lastCommit = CompletableFuture.completedFuture(null);
+    this.openWriterLimiter = openWriterLimiter;
+    this.fileExecutor = fileExecutor;
+    checkpointIntervalRecords = wal instanceof FSWAL
+                                ? config.tempFileCheckpointIntervalRecords()
+                                : -1;
+
     if (rotateScheduleIntervalMs > 0) {
       timeZone = DateTimeZone.forID(config.getString(PartitionerConfig.TIMEZONE_CONFIG));
     } else {
@@ -252,11 +321,16 @@ public class TopicPartitionWriter {
 
   private void resetBuffers() {
     buffer.clear();
+    bufferedBytes = 0;
     writers.clear();
-    appended.clear();
+    if (openWriterLimiter != null) {
+      openWriterLimiter.closedAll(tp);
+    }
     startOffsets.clear();
     endOffsets.clear();
     recordCounter = 0;
+    largestTempFileSize = 0;
+    recordsSinceCheckpoint = 0;
     currentSchema = null;
   }
 
@@ -280,7 +354,11 @@ public class TopicPartitionWriter {
           nextState();
         case RECOVERY_PARTITION_PAUSED:
           log.debug("Start recovery state: Apply WAL for topic partition {}", tp);
-          applyWAL();
+          if (!wal.tryAcquireLease() || !applyWAL()) {
+            waitForLease();
+            return false;
+          }
+          leaseWaitStartTime = -1L;
           nextState();
         case WAL_APPLIED:
           log.debug("Start recovery state: Reset Offsets for topic partition {}", tp);
@@ -313,6 +391,41 @@ public class TopicPartitionWriter {
     return true;
   }
 
+  /**
+   * Another task, likely the one the topic partition was assigned to before, still holds the lease
+   * on the WAL, or on temp files that applying the WAL commits. Rather than sleeping on the task
+   * thread, the topic partition stays paused and recovery is retried on a later write, while the
+   * other topic partitions carry on.
+   */
+  private void waitForLease() {
+    long now = time.milliseconds();
+    if (leaseWaitStartTime < 0) {
+      leaseWaitStartTime = now;
+    }
+    log.info(
+        "Waiting for the leases to apply the WAL of topic partition {} for {}ms, will retry",
+        tp,
+        now - leaseWaitStartTime
+    );
+    failureTime = now;
+    setRetryTimeout(timeoutMs);
+  }
+
+  /**
+   * @return true if recovery waits for another task to release the lease on the WAL
+   */
+  public boolean isWaitingForLease() {
+    return leaseWaitStartTime >= 0;
+  }
+
+  /**
+   * @return how long recovery has been waiting for another task to release the lease on the WAL,
+   *     or 0 if it isn't waiting
+   */
+  public long leaseWaitMs() {
+    return leaseWaitStartTime < 0 ? 0 : time.milliseconds() - leaseWaitStartTime;
+  }
+
   private void updateRotationTimers(SinkRecord currentRecord) {
     long now = time.milliseconds();
     // Wallclock-based partitioners should be independent of the record argument.
@@ -344,6 +457,7 @@ public class TopicPartitionWriter {
 
   private void resetAndSetRecovery() {
     context.offset(tp, offset);
+    firstDroppedOffset = -1;
     resetBuffers();
     state = State.RECOVERY_STARTED;
     recovered = false;
@@ -353,6 +467,13 @@ public class TopicPartitionWriter {
   public void write() {
     long now = time.milliseconds();
     SinkRecord currentRecord = null;
+    if (maxInFlightCommits > 0) {
+      Throwable commitFailure = completePendingCommits();
+      if (commitFailure != null) {
+        resetAfterFailedCommit(commitFailure);
+        return;
+      }
+    }
     if (failureTime > 0 && now - failureTime < timeoutMs) {
       return;
     }
@@ -363,7 +484,8 @@ public class TopicPartitionWriter {
       }
       updateRotationTimers(null);
     }
-    while (!buffer.isEmpty()) {
+    boolean waitingForWriter = false;
+    while (!buffer.isEmpty() && !waitingForWriter) {
       try {
         switch (state) {
           case WRITE_STARTED:
@@ -372,19 +494,7 @@ public class TopicPartitionWriter {
           case WRITE_PARTITION_PAUSED:
             if (currentSchema == null) {
               if (compatibility != StorageSchemaCompatibility.NONE && offset != -1) {
-                String topicDir = FileUtils.topicDirectory(url, topicsDir, tp.topic());
-                CommittedFileFilter filter = new TopicPartitionCommittedFileFilter(tp);
-                FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
-                    storage,
-                    new Path(topicDir),
-                    filter
-                );
-                if (fileStatusWithMaxOffset != null) {
-                  currentSchema = schemaFileReader.getSchema(
-                      connectorConfig,
-                      fileStatusWithMaxOffset.getPath()
-                  );
-                }
+                currentSchema = lastCommittedSchema();
               }
             }
             SinkRecord record = buffer.peek();
@@ -413,15 +523,33 @@ public class TopicPartitionWriter {
                 );
                 nextState();
                 // Fall through and try to rotate immediately
+              } else if (!mayOpenWriter(record)) {
+                // Stays paused with the record buffered until another topic partition frees a
+                // writer, and is retried on the next write
+                log.debug("Waiting for a writer to be freed for topic partition {}", tp);
+                waitingForWriter = true;
+                break;
               } else {
                 SinkRecord projectedRecord = compatibility.project(record, null, currentSchema);
                 writeRecord(projectedRecord);
                 buffer.poll();
+                if (maxBufferedBytes > 0) {
+                  bufferedBytes -= RecordSizeEstimator.estimate(record);
+                }
+                if (checkpointIntervalRecords > 0
+                    && ++recordsSinceCheckpoint >= checkpointIntervalRecords) {
+                  checkpointTempFiles();
+                }
                 break;
               }
             }
           case SHOULD_ROTATE:
             updateRotationTimers(currentRecord);
+            if (maxInFlightCommits > 0) {
+              commitInBackground();
+              setState(State.WRITE_PARTITION_PAUSED);
+              break;
+            }
             closeTempFile();
             nextState();
           case TEMP_FILE_CLOSED:
@@ -470,6 +598,11 @@ public class TopicPartitionWriter {
             nextState();
           case SHOULD_ROTATE:
             updateRotationTimers(currentRecord);
+            if (maxInFlightCommits > 0) {
+              commitInBackground();
+              setState(State.WRITE_PARTITION_PAUSED);
+              break;
+            }
             closeTempFile();
             nextState();
           case TEMP_FILE_CLOSED:
@@ -497,12 +630,40 @@ public class TopicPartitionWriter {
 
       resume();
       state = State.WRITE_STARTED;
+      firstDroppedOffset = -1;
+    }
+  }
+
+  /**
+   * Whether this writer is still in line with the files committed for its topic partition, so it
+   * can carry on with its temp files when the topic partition is assigned to the task again. If
+   * files were committed elsewhere since, or a background commit failed, it has to be recovered.
+   */
+  public boolean isCommittedOffsetCurrent() {
+    if (state.compareTo(State.WRITE_STARTED) < 0) {
+      // Recovery reads the committed offset anyway
+      return true;
+    }
+    for (PendingCommit commit : pendingCommits) {
+      awaitQuietly(commit);
+    }
+    if (completePendingCommits() != null) {
+      return false;
+    }
+    try {
+      FilePathOffset latestOffsetEntry = wal.extractLatestOffset();
+      return latestOffsetEntry == null || latestOffsetEntry.getOffset() < offset;
+    } catch (ConnectException e) {
+      log.warn("Failed to read the committed offset of {} from the WAL", tp, e);
+      return false;
     }
   }
 
   public void close() throws ConnectException {
     log.debug("Closing TopicPartitionWriter {}", tp);
     List<Exception> exceptions = new ArrayList<>();
+    // Let the files that were already rotated finish committing, they're complete
+    drainPendingCommits();
     for (String encodedPartition : tempFiles.keySet()) {
       log.debug(
           "Discarding in progress tempfile {} for {} {}",
@@ -537,6 +698,9 @@ public class TopicPartitionWriter {
     }
 
     writers.clear();
+    if (openWriterLimiter != null) {
+      openWriterLimiter.closedAll(tp);
+    }
 
     try {
       wal.close();
@@ -558,8 +722,35 @@ public class TopicPartitionWriter {
   }
 
   public void buffer(SinkRecord sinkRecord) {
+    if (firstDroppedOffset < 0 && isBufferFull()) {
+      firstDroppedOffset = sinkRecord.kafkaOffset();
+      log.info(
+          "Buffer of topic partition {} is full with {} records of about {} bytes, pausing it and "
+              + "rewinding to offset {}",
+          tp,
+          buffer.size(),
+          bufferedBytes,
+          firstDroppedOffset
+      );
+      pause();
+      context.offset(tp, firstDroppedOffset);
+    }
+    if (firstDroppedOffset >= 0) {
+      log.trace("Dropping record with offset {} from full buffer", sinkRecord.kafkaOffset());
+      return;
+    }
     log.trace("Buffering record with offset {}", sinkRecord.kafkaOffset());
     buffer.add(sinkRecord);
+    if (maxBufferedBytes > 0) {
+      bufferedBytes += RecordSizeEstimator.estimate(sinkRecord);
+    }
+  }
+
+  private boolean isBufferFull() {
+    // Always accept at least one record, so the topic partition can make progress
+    return !buffer.isEmpty()
+        && ((maxBufferedRecords > 0 && buffer.size() >= maxBufferedRecords)
+            || (maxBufferedBytes > 0 && bufferedBytes >= maxBufferedBytes));
   }
 
   /**
@@ -572,6 +763,9 @@ public class TopicPartitionWriter {
    *     yet
    */
   public long offset() {
+    if (maxInFlightCommits > 0) {
+      completePendingCommits();
+    }
     return offset;
   }
 
@@ -614,6 +808,9 @@ public class TopicPartitionWriter {
         && currentTimestamp - lastRotate >= rotateIntervalMs;
     boolean scheduledRotation = rotateScheduleIntervalMs > 0 && now >= nextScheduledRotate;
     boolean messageSizeRotation = recordCounter >= flushSize;
+    boolean fileSizeRotation = rotateSizeBytes > 0 && largestTempFileSize >= rotateSizeBytes;
+    boolean evictionRotation = shouldRotateToFreeWriters(currentRecord);
+    boolean memoryRotation = isRotationRequestedByWriter();
 
     log.trace(
         "Should apply periodic time-based rotation (rotateIntervalMs: '{}', lastRotate: "
@@ -640,7 +837,65 @@ public class TopicPartitionWriter {
         messageSizeRotation
     );
 
-    return periodicRotation || scheduledRotation || messageSizeRotation;
+    log.trace(
+        "Should apply file size rotation (largest file {} >= rotate size {})? {}",
+        largestTempFileSize,
+        rotateSizeBytes,
+        fileSizeRotation
+    );
+
+    log.trace("Should rotate to free open writers? {}", evictionRotation);
+
+    log.trace("Should rotate to free writer memory? {}", memoryRotation);
+
+    return periodicRotation
+        || scheduledRotation
+        || messageSizeRotation
+        || fileSizeRotation
+        || evictionRotation
+        || memoryRotation;
+  }
+
+  /**
+   * Whether a writer of this topic partition asks to be rotated to free the memory it buffers,
+   * which the writer memory budget asks of writers that can't write out their buffered data.
+   */
+  private boolean isRotationRequestedByWriter() {
+    for (io.confluent.connect.storage.format.RecordWriter writer : writers.values()) {
+      if (writer instanceof SizeAwareRecordWriter
+          && ((SizeAwareRecordWriter) writer).isRotationRequested()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the writers of this topic partition should be closed and committed because the task
+   * has reached its limit of open writers. If the record needs a new writer while the limit is
+   * reached, the topic partition with the least recently used writer is asked to rotate, and this
+   * one rotates as well to free the writer it needs.
+   */
+  private boolean shouldRotateToFreeWriters(SinkRecord record) {
+    if (openWriterLimiter == null || recordCounter <= 0) {
+      // Without records there are no writers to free, see mayOpenWriter()
+      return false;
+    }
+    return !mayOpenWriter(record) || openWriterLimiter.isEvictionRequested(tp);
+  }
+
+  /**
+   * Whether the record can be written without exceeding the task's limit of open writers. If it
+   * needs a new writer, the writer is accounted for right away so that other topic partitions
+   * can't take its place.
+   */
+  private boolean mayOpenWriter(SinkRecord record) {
+    if (openWriterLimiter == null || record == null) {
+      return true;
+    }
+    String encodedPartition = partitioner.encodePartition(record);
+    return writers.containsKey(encodedPartition)
+        || openWriterLimiter.tryAcquire(tp, encodedPartition);
   }
 
   /**
@@ -658,19 +913,11 @@ public class TopicPartitionWriter {
       return;
     }
 
-    // Use the recursive filename scan approach
     log.debug("Could not use WAL approach for recovering offsets, "
         + "searching for latest offsets on HDFS.");
-    String path = FileUtils.topicDirectory(url, topicsDir, tp.topic());
-    CommittedFileFilter filter = new TopicPartitionCommittedFileFilter(tp);
-    FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
-        storage,
-        new Path(path),
-        filter
-    );
-    if (fileStatusWithMaxOffset != null) {
-      long lastCommittedOffsetToHdfs = FileUtils.extractOffset(
-          fileStatusWithMaxOffset.getPath().getName());
+    Path latestCommittedFile = latestCommittedFile();
+    if (latestCommittedFile != null) {
+      long lastCommittedOffsetToHdfs = FileUtils.extractOffset(latestCommittedFile.getName());
       log.trace("Last committed offset based on filenames: {}", lastCommittedOffsetToHdfs);
       // `offset` represents the next offset to read after the most recent commit
       offset = lastCommittedOffsetToHdfs + 1;
@@ -678,6 +925,76 @@ public class TopicPartitionWriter {
     }
   }
 
+  /**
+   * Find the committed file with the latest offset of the topic partition, from the committed
+   * offset file if it's enabled and valid, and otherwise by searching the directories of the
+   * topic, newest first if enabled for a time based partitioner.
+   *
+   * @return the committed file, or null if no file was committed yet
+   */
+  private Path latestCommittedFile() {
+    if (committedOffsetFile != null) {
+      CommittedOffsetFile.Entry entry = committedOffsetFile.read();
+      if (entry != null) {
+        log.trace(
+            "Found latest committed file {} in committed offset file",
+            entry.committedFile()
+        );
+        return entry.committedFile();
+      }
+    }
+    String path = FileUtils.topicDirectory(url, topicsDir, tp.topic());
+    CommittedFileFilter filter = new TopicPartitionCommittedFileFilter(tp);
+    FileStatus fileStatusWithMaxOffset;
+    if (offsetSearchNewestFirst) {
+      fileStatusWithMaxOffset =
+          FileUtils.fileStatusWithMaxOffsetNewestFirst(storage, new Path(path), filter);
+    } else {
+      fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
+          storage,
+          new Path(path),
+          filter,
+          connectorConfig.directoryListingMaxConcurrency()
+      );
+    }
+    return fileStatusWithMaxOffset != null ? fileStatusWithMaxOffset.getPath() : null;
+  }
+
+  /**
+   * Find the value schema of the last committed file. It's cached when this writer commits a file,
+   * or reads the schema, and used until the offset changes, so resetting the writer after a failure
+   * doesn't search the directories of the topic or open the file again.
+   *
+   * @return the schema, or null if no file was committed yet or its records have none
+   */
+  private Schema lastCommittedSchema() {
+    if (committedSchemaOffset == offset) {
+      return committedSchema;
+    }
+    Schema schema = null;
+    CommittedOffsetFile.Entry entry = committedOffsetFile != null
+                                      ? committedOffsetFile.read()
+                                      : null;
+    if (entry != null
+        && entry.hasSchema()
+        && FileUtils.extractOffset(entry.committedFile().getName()) + 1 == offset) {
+      log.trace("Found schema of latest committed file in committed offset file");
+      schema = entry.schema();
+    } else {
+      Path latestCommittedFile = latestCommittedFile();
+      if (latestCommittedFile != null) {
+        schema = schemaFileReader.getSchema(connectorConfig, latestCommittedFile);
+      }
+    }
+    cacheCommittedSchema(schema);
+    return schema;
+  }
+
+  private void cacheCommittedSchema(Schema schema) {
+    committedSchema = schema;
+    committedSchemaOffset = offset;
+  }
+
   private void pause() {
     context.pause(tp);
   }
@@ -691,6 +1008,9 @@ public class TopicPartitionWriter {
       String encodedPartition
   ) throws ConnectException {
     if (writers.containsKey(encodedPartition)) {
+      if (openWriterLimiter != null) {
+        openWriterLimiter.used(tp, encodedPartition);
+      }
       return writers.get(encodedPartition);
     }
     String tempFile = getTempFile(encodedPartition);
@@ -714,10 +1034,17 @@ public class TopicPartitionWriter {
         );
       }
     } catch (IOException e) {
+      releaseWriter(encodedPartition);
       throw new ConnectException("Couldn't create RecordWriter", e);
+    } catch (RuntimeException e) {
+      releaseWriter(encodedPartition);
+      throw e;
     }
 
     writers.put(encodedPartition, writer);
+    if (openWriterLimiter != null) {
+      openWriterLimiter.opened(tp, encodedPartition);
+    }
     if (hiveIntegration && !hivePartitions.contains(encodedPartition)) {
       addHivePartition(encodedPartition);
       hivePartitions.add(encodedPartition);
@@ -725,6 +1052,15 @@ public class TopicPartitionWriter {
     return writer;
   }
 
+  /**
+   * Give up the writer accounted for when the record needing it was checked.
+   */
+  private void releaseWriter(String encodedPartition) {
+    if (openWriterLimiter != null) {
+      openWriterLimiter.closed(tp, encodedPartition);
+    }
+  }
+
   private String getTempFile(String encodedPartition) {
     String tempFile;
     if (tempFiles.containsKey(encodedPartition)) {
@@ -738,10 +1074,11 @@ public class TopicPartitionWriter {
     return tempFile;
   }
 
-  private void applyWAL() throws ConnectException {
-    if (!recovered) {
-      wal.apply();
-    }
+  /**
+   * @return false if applying the WAL waits for files to be closed and should be retried
+   */
+  private boolean applyWAL() throws ConnectException {
+    return recovered || wal.tryApply();
   }
 
   private void truncateWAL() throws ConnectException {
@@ -781,12 +1118,55 @@ public class TopicPartitionWriter {
     String encodedPartition = partitioner.encodePartition(record);
     io.confluent.connect.storage.format.RecordWriter writer = getWriter(record, encodedPartition);
     writer.write(record);
+    writtenSchema = record.valueSchema();
 
     if (!startOffsets.containsKey(encodedPartition)) {
       startOffsets.put(encodedPartition, record.kafkaOffset());
     }
     endOffsets.put(encodedPartition, record.kafkaOffset());
     recordCounter++;
+    if (rotateSizeBytes > 0 && writer instanceof SizeAwareRecordWriter) {
+      largestTempFileSize = Math.max(
+          largestTempFileSize,
+          ((SizeAwareRecordWriter) writer).size()
+      );
+    }
+  }
+
+  /**
+   * Flush the open temp files and record their lengths in the WAL, so that recovery can commit
+   * them instead of writing their records again. Put off while earlier rotations are committed in
+   * the background, since recovery must not resume after records whose files aren't in the WAL.
+   */
+  private void checkpointTempFiles() {
+    if (!pendingCommits.isEmpty()) {
+      return;
+    }
+    List<FSWAL.Checkpoint> checkpoints = new ArrayList<>();
+    for (Map.Entry<String, String> entry : tempFiles.entrySet()) {
+      String encodedPartition = entry.getKey();
+      if (!startOffsets.containsKey(encodedPartition)) {
+        continue;
+      }
+      io.confluent.connect.storage.format.RecordWriter writer = writers.get(encodedPartition);
+      if (!(writer instanceof CheckpointableRecordWriter)) {
+        // The temp file is closed already or its format can't be truncated
+        recordsSinceCheckpoint = 0;
+        return;
+      }
+      long length = ((CheckpointableRecordWriter) writer).checkpoint();
+      String committedFile = committedFileName(
+          encodedPartition,
+          startOffsets.get(encodedPartition),
+          endOffsets.get(encodedPartition)
+      );
+      checkpoints.add(new FSWAL.Checkpoint(entry.getValue(), length, committedFile));
+    }
+    if (!checkpoints.isEmpty()) {
+      log.debug("Checkpointing {} temp files of topic partition {}", checkpoints.size(), tp);
+      ((FSWAL) wal).checkpoint(checkpoints);
+    }
+    recordsSinceCheckpoint = 0;
   }
 
   private void closeTempFile(String encodedPartition) {
@@ -799,28 +1179,42 @@ public class TopicPartitionWriter {
     // not use it again. Therefore, it's actually better to remove the writer before
     // trying to close it, even if the close attempt fails.
     io.confluent.connect.storage.format.RecordWriter writer = writers.remove(encodedPartition);
+    if (openWriterLimiter != null) {
+      openWriterLimiter.closed(tp, encodedPartition);
+    }
     if (writer != null) {
       writer.close();
     }
   }
 
   private void closeTempFile() {
-    RuntimeException exception = null;
+    // The writers are removed before they're closed, see closeTempFile(String)
+    Map<String, io.confluent.connect.storage.format.RecordWriter> closing = new HashMap<>();
     for (String encodedPartition : tempFiles.keySet()) {
-      // Close the file and propagate any errors
-      try {
-        closeTempFile(encodedPartition);
-      } catch (RuntimeException e) {
-        // still want to close all of the other data writers
-        exception = e;
-        log.error(
-            "Failed to close temporary file for partition {}. The connector will attempt to"
-                + " rewrite the temporary file.",
-            encodedPartition
-        );
+      io.confluent.connect.storage.format.RecordWriter writer = writers.remove(encodedPartition);
+      if (openWriterLimiter != null) {
+        openWriterLimiter.closed(tp, encodedPartition);
+      }
+      if (writer != null) {
+        closing.put(encodedPartition, writer);
       }
     }
 
+    // Close the files and propagate any errors, still closing all of the other data writers
+    Map<String, RuntimeException> failures = forEachFile(
+        closing.keySet(),
+        encodedPartition -> closing.get(encodedPartition).close()
+    );
+    RuntimeException exception = null;
+    for (Map.Entry<String, RuntimeException> failure : failures.entrySet()) {
+      exception = failure.getValue();
+      log.error(
+          "Failed to close temporary file for partition {}. The connector will attempt to"
+              + " rewrite the temporary file.",
+          failure.getKey()
+      );
+    }
+
     if (exception != null) {
       // at least one tmp file did not close properly therefore will try to recreate the tmp and
       // delete all buffered records + tmp files and start over because otherwise there will be
@@ -830,106 +1224,408 @@ public class TopicPartitionWriter {
         startOffsets.remove(encodedPartition);
         endOffsets.remove(encodedPartition);
         buffer.clear();
+        bufferedBytes = 0;
       }
 
       log.debug("Resetting offset for {} to {}", tp, offset);
       context.offset(tp, offset);
+      firstDroppedOffset = -1;
 
       recordCounter = 0;
+      largestTempFileSize = 0;
       throw exception;
     }
   }
 
-  private void appendToWAL(String encodedPartition) {
-    String tempFile = tempFiles.get(encodedPartition);
-    if (appended.contains(tempFile)) {
-      return;
-    }
-    if (!startOffsets.containsKey(encodedPartition)) {
-      return;
+  private void appendToWAL() {
+    Map<String, String> entries = new HashMap<>();
+    for (String encodedPartition : tempFiles.keySet()) {
+      if (startOffsets.containsKey(encodedPartition)) {
+        entries.put(
+            tempFiles.get(encodedPartition),
+            committedFileName(
+                encodedPartition,
+                startOffsets.get(encodedPartition),
+                endOffsets.get(encodedPartition)
+            )
+        );
+      }
     }
-    long startOffset = startOffsets.get(encodedPartition);
-    long endOffset = endOffsets.get(encodedPartition);
-    String directory = getDirectory(encodedPartition);
-    String committedFile = FileUtils.committedFileName(
-        url,
-        topicsDir,
-        directory,
-        tp,
-        startOffset,
-        endOffset,
-        extension,
-        zeroPadOffsetFormat
-    );
-    wal.append(tempFile, committedFile);
-    appended.add(tempFile);
+    // The block is complete or ignored on recovery, so it's appended again as a whole on retry
+    wal.appendBlock(entries);
+    walBlock = entries;
   }
 
-  private void appendToWAL() {
-    beginAppend();
+  private void commitFile() {
+    log.debug("Committing files");
+
+    Map<String, String> committedFiles = new HashMap<>();
     for (String encodedPartition : tempFiles.keySet()) {
-      appendToWAL(encodedPartition);
+      if (startOffsets.containsKey(encodedPartition)) {
+        committedFiles.put(
+            encodedPartition,
+            committedFileName(
+                encodedPartition,
+                startOffsets.get(encodedPartition),
+                endOffsets.get(encodedPartition)
+            )
+        );
+      }
+    }
+
+    // commit all files and get the latest committed offset
+    Map<String, RuntimeException> failures = commitFiles(tempFiles, committedFiles);
+    long latestCommitted = -1;
+    String latestCommittedFile = null;
+    for (String encodedPartition : committedFiles.keySet()) {
+      if (failures.containsKey(encodedPartition)) {
+        continue;
+      }
+      long endOffset = endOffsets.remove(encodedPartition);
+      if (endOffset > latestCommitted) {
+        latestCommitted = endOffset;
+        latestCommittedFile = committedFiles.get(encodedPartition);
+      }
+      startOffsets.remove(encodedPartition);
+      recordCounter = 0;
+      largestTempFileSize = 0;
+    }
+    if (!failures.isEmpty()) {
+      // The files that failed are committed again when this is retried
+      throw failures.values().iterator().next();
+    }
+    // The whole block, including the files committed before a retry
+    wal.blockCommitted(walBlock);
+    walBlock = null;
+    if (latestCommitted > -1) {
+      offset = latestCommitted + 1;
+      cacheCommittedSchema(writtenSchema);
+      updateCommittedOffsetFile(latestCommitted, latestCommittedFile, writtenSchema);
     }
-    endAppend();
   }
 
-  private void beginAppend() {
-    if (!appended.contains(WAL.beginMarker)) {
-      wal.append(WAL.beginMarker, "");
+  private void updateCommittedOffsetFile(
+      long latestCommitted,
+      String latestCommittedFile,
+      Schema schema
+  ) {
+    if (committedOffsetFile != null) {
+      committedOffsetFile.update(latestCommitted, latestCommittedFile, schema);
     }
   }
 
-  private void endAppend() {
-    if (!appended.contains(WAL.endMarker)) {
-      wal.append(WAL.endMarker, "");
+  /**
+   * Run an action for each of the given encoded partitions, concurrently on the file executor if
+   * there is one. Every action runs, regardless of others failing.
+   *
+   * @param encodedPartitions the encoded partitions
+   * @param action the action, which must not modify the state of this writer
+   * @return the failures by encoded partition, empty if every action succeeded
+   */
+  private Map<String, RuntimeException> forEachFile(
+      Collection<String> encodedPartitions,
+      Consumer<String> action
+  ) {
+    Map<String, RuntimeException> failures = new HashMap<>();
+    if (fileExecutor == null || encodedPartitions.size() < 2) {
+      for (String encodedPartition : encodedPartitions) {
+        try {
+          action.accept(encodedPartition);
+        } catch (RuntimeException e) {
+          failures.put(encodedPartition, e);
+        }
+      }
+      return failures;
+    }
+
+    Map<String, Future<?>> futures = new LinkedHashMap<>();
+    for (String encodedPartition : encodedPartitions) {
+      futures.put(encodedPartition, fileExecutor.submit(() -> action.accept(encodedPartition)));
     }
+    for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+      try {
+        entry.getValue().get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        failures.put(
+            entry.getKey(),
+            cause instanceof RuntimeException
+            ? (RuntimeException) cause
+            : new ConnectException(cause)
+        );
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failures.put(entry.getKey(), new ConnectException(e));
+      }
+    }
+    return failures;
   }
 
-  private void commitFile() {
-    log.debug("Committing files");
-    appended.clear();
+  /**
+   * Commit the temp files of the given encoded partitions at once, each after creating its
+   * directory unless it's known to exist. The storage operations are chained without a thread
+   * waiting on each of them. Every file is committed, regardless of others failing.
+   *
+   * @param tempFiles the temp file of each encoded partition
+   * @param committedFiles the committed file of each encoded partition to commit
+   * @return the failures by encoded partition, empty if every file was committed
+   */
+  private Map<String, RuntimeException> commitFiles(
+      Map<String, String> tempFiles,
+      Map<String, String> committedFiles
+  ) {
+    Map<String, CompletableFuture<Void>> commits = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : committedFiles.entrySet()) {
+      String encodedPartition = entry.getKey();
+      String tempFile = tempFiles.get(encodedPartition);
+      String committedFile = entry.getValue();
+      String directoryName =
+          FileUtils.directoryName(url, topicsDir, getDirectory(encodedPartition));
+      commits.put(
+          encodedPartition,
+          storage.ensureDirectoryAsync(directoryName)
+              .thenCompose(created -> storage.commitAsync(tempFile, committedFile))
+              .thenRun(() -> log.info("Committed {} for {}", committedFile, tp))
+      );
+    }
 
-    // commit all files and get the latest committed offset
-    long latestCommitted = tempFiles.keySet().stream()
-        .mapToLong(this::commitFile)
-        .max()
-        .orElse(-1);
-    if (latestCommitted > -1) {
-      offset = latestCommitted + 1;
+    Map<String, RuntimeException> failures = new HashMap<>();
+    for (Map.Entry<String, CompletableFuture<Void>> entry : commits.entrySet()) {
+      try {
+        entry.getValue().join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        failures.put(
+            entry.getKey(),
+            cause instanceof RuntimeException
+            ? (RuntimeException) cause
+            : new ConnectException(cause)
+        );
+      }
     }
+    return failures;
   }
 
-  private long commitFile(String encodedPartition) {
-    if (!startOffsets.containsKey(encodedPartition)) {
-      return -1;
-    }
-    log.debug("Committing file for partition {}", encodedPartition);
-    long startOffset = startOffsets.get(encodedPartition);
-    long endOffset = endOffsets.get(encodedPartition);
-    String tempFile = tempFiles.get(encodedPartition);
-    String directory = getDirectory(encodedPartition);
-    String committedFile = FileUtils.committedFileName(
+  private String committedFileName(String encodedPartition, long startOffset, long endOffset) {
+    return FileUtils.committedFileName(
         url,
         topicsDir,
-        directory,
+        getDirectory(encodedPartition),
         tp,
         startOffset,
         endOffset,
         extension,
         zeroPadOffsetFormat
     );
+  }
 
-    String directoryName = FileUtils.directoryName(url, topicsDir, directory);
-    if (!storage.exists(directoryName)) {
-      storage.create(directoryName);
+  /**
+   * Hand the files of the current rotation over to the commit pool and continue with new temp
+   * files. The commits of this topic partition are chained, so they close their files, write their
+   * WAL blocks and rename their files one rotation after the other. Waits for the oldest commit if
+   * the maximum number of commits is already in flight.
+   */
+  private void commitInBackground() {
+    Throwable failure = completePendingCommits();
+    while (failure == null && pendingCommits.size() >= maxInFlightCommits) {
+      log.debug("Waiting for the oldest of {} in-flight commits for {}", pendingCommits.size(), tp);
+      awaitQuietly(pendingCommits.peek());
+      failure = completePendingCommits();
+    }
+    if (failure != null) {
+      throw new ConnectException("A previous commit failed for topic partition " + tp, failure);
+    }
+
+    PendingCommit commit = new PendingCommit();
+    for (Map.Entry<String, Long> entry : startOffsets.entrySet()) {
+      String encodedPartition = entry.getKey();
+      long endOffset = endOffsets.get(encodedPartition);
+      commit.committedFiles.put(
+          encodedPartition,
+          committedFileName(encodedPartition, entry.getValue(), endOffset)
+      );
+      commit.endOffsets.put(encodedPartition, endOffset);
     }
-    storage.commit(tempFile, committedFile);
-    startOffsets.remove(encodedPartition);
-    endOffsets.remove(encodedPartition);
+    commit.writers.putAll(writers);
+    commit.tempFiles.putAll(tempFiles);
+    commit.schema = writtenSchema;
+    log.info(
+        "Committing files in the background for topic partition {} with start offsets {} and "
+            + "end offsets {}",
+        tp,
+        startOffsets,
+        endOffsets
+    );
+
+    // New records go to new temp files while these are committed
+    writers.clear();
+    tempFiles.clear();
+    startOffsets.clear();
+    endOffsets.clear();
     recordCounter = 0;
-    log.info("Committed {} for {}", committedFile, tp);
+    largestTempFileSize = 0;
+
+    commit.future = lastCommit.thenRunAsync(() -> commit(commit), commitExecutor);
+    lastCommit = commit.future;
+    pendingCommits.add(commit);
+  }
+
+  private void commit(PendingCommit commit) {
+    Map<String, RuntimeException> failures = forEachFile(
+        commit.writers.keySet(),
+        encodedPartition -> {
+          try {
+            commit.writers.get(encodedPartition).close();
+          } finally {
+            if (openWriterLimiter != null) {
+              openWriterLimiter.closed(tp, encodedPartition);
+            }
+          }
+        }
+    );
+    for (String encodedPartition : failures.keySet()) {
+      log.error("Failed to close temporary file for partition {}.", encodedPartition);
+    }
+    commit.writersClosed = true;
+    if (!failures.isEmpty()) {
+      throw failures.values().iterator().next();
+    }
+
+    Map<String, String> entries = new HashMap<>();
+    for (Map.Entry<String, String> entry : commit.committedFiles.entrySet()) {
+      entries.put(commit.tempFiles.get(entry.getKey()), entry.getValue());
+    }
+    wal.appendBlock(entries);
+    commit.walAppended = true;
+
+    failures = commitFiles(commit.tempFiles, commit.committedFiles);
+    if (!failures.isEmpty()) {
+      throw failures.values().iterator().next();
+    }
+    wal.blockCommitted(entries);
+    long latestCommitted = -1;
+    String latestCommittedFile = null;
+    for (String encodedPartition : commit.committedFiles.keySet()) {
+      long endOffset = commit.endOffsets.get(encodedPartition);
+      if (endOffset > latestCommitted) {
+        latestCommitted = endOffset;
+        latestCommittedFile = commit.committedFiles.get(encodedPartition);
+      }
+    }
+    if (latestCommitted > -1) {
+      updateCommittedOffsetFile(latestCommitted, latestCommittedFile, commit.schema);
+    }
+    commit.latestCommitted = latestCommitted;
+  }
+
+  /**
+   * Advance the offset past every commit that finished, in the order they were started.
+   *
+   * @return the cause of the oldest failed commit, or null if no commit failed so far
+   */
+  private Throwable completePendingCommits() {
+    while (!pendingCommits.isEmpty() && pendingCommits.peek().future.isDone()) {
+      PendingCommit commit = pendingCommits.peek();
+      Throwable failure = failureOf(commit);
+      if (failure != null) {
+        return failure;
+      }
+      pendingCommits.poll();
+      if (commit.latestCommitted > -1) {
+        offset = commit.latestCommitted + 1;
+        cacheCommittedSchema(commit.schema);
+      }
+    }
+    return null;
+  }
 
-    return endOffset;
+  /**
+   * Wait for every pending commit. Files of failed commits that never made it into the WAL are
+   * deleted. Those that did are left for WAL recovery to commit.
+   */
+  private void drainPendingCommits() {
+    for (PendingCommit commit : pendingCommits) {
+      awaitQuietly(commit);
+      if (failureOf(commit) == null) {
+        if (commit.latestCommitted > -1) {
+          offset = commit.latestCommitted + 1;
+        }
+        continue;
+      }
+      if (commit.walAppended) {
+        continue;
+      }
+      if (!commit.writersClosed) {
+        for (Map.Entry<String, io.confluent.connect.storage.format.RecordWriter> entry
+            : commit.writers.entrySet()) {
+          try {
+            entry.getValue().close();
+          } catch (RuntimeException e) {
+            log.debug("Failed to close writer of a discarded commit for {}", tp, e);
+          }
+          if (openWriterLimiter != null) {
+            openWriterLimiter.closed(tp, entry.getKey());
+          }
+        }
+      }
+      for (String tempFile : commit.tempFiles.values()) {
+        try {
+          storage.delete(tempFile);
+        } catch (ConnectException e) {
+          log.error("Failed to delete tmp file {}", tempFile, e);
+        }
+      }
+    }
+    pendingCommits.clear();
+    lastCommit = CompletableFuture.completedFuture(null);
+  }
+
+  private void resetAfterFailedCommit(Throwable cause) {
+    log.error(
+        "Committing files in the background failed for topic partition {}, resetting to offset {}",
+        tp,
+        offset,
+        cause
+    );
+    drainPendingCommits();
+    for (String encodedPartition : new ArrayList<>(writers.keySet())) {
+      try {
+        closeTempFile(encodedPartition);
+      } catch (RuntimeException e) {
+        log.debug("Failed to close temp file for {} {}", tp, encodedPartition, e);
+      }
+    }
+    safeDeleteTempFiles();
+    tempFiles.clear();
+    failureTime = time.milliseconds();
+    setRetryTimeout(timeoutMs);
+    resetAndSetRecovery();
+  }
+
+  private static void awaitQuietly(PendingCommit commit) {
+    try {
+      commit.future.join();
+    } catch (CompletionException e) {
+      // inspected by the caller
+    }
+  }
+
+  private static Throwable failureOf(PendingCommit commit) {
+    if (!commit.future.isCompletedExceptionally()) {
+      return null;
+    }
+    try {
+      commit.future.join();
+      return null;
+    } catch (CompletionException e) {
+      return e.getCause() != null ? e.getCause() : e;
+    }
   }
 
   private void deleteTempFile(String encodedPartition) {
@@ -976,6 +1672,21 @@ public class TopicPartitionWriter {
     hiveUpdateFutures.add(future);
   }
 
+  /**
+   * The files of one rotation that are committed in the background.
+   */
+  private static class PendingCommit {
+    final Map<String, io.confluent.connect.storage.format.RecordWriter> writers = new HashMap<>();
+    final Map<String, String> tempFiles = new HashMap<>();
+    final Map<String, String> committedFiles = new HashMap<>();
+    final Map<String, Long> endOffsets = new HashMap<>();
+    Schema schema;
+    CompletableFuture<Void> future;
+    volatile boolean writersClosed;
+    volatile boolean walAppended;
+    volatile long latestCommitted = -1;
+  }
+
   private enum State {
     RECOVERY_STARTED,
     RECOVERY_PARTITION_PAUSED,
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Shares one memory budget between the columnar record writers of a task, which buffer a whole
+ * row group or stripe in memory before writing it out.
+ *
+ * <p>Each writer is given an allocation when it's opened, which it uses as its row group or
+ * stripe size. An allocation is at most an equal share of the budget between the open writers and
+ * what the other allocations leave of it, down to a minimum. Row group and stripe sizes can't be
+ * changed once a writer is open, so when a new writer can't get its share, the writer with the
+ * largest allocation above it is asked to rotate, and gets its share once it's opened again.
+ * Until it's closed, the allocations may exceed the budget by the minimum allocation of the new
+ * writers. </p>
+ *
+ * <p>Writers report the memory they use every {@link #CHECK_INTERVAL_ROWS} rows. When the
+ * reported total exceeds the budget, the largest writer that is able to flush is asked to do so
+ * on its next write. Requests are picked up by the writers themselves, since record writers must
+ * not be used from more than one thread. </p>
+ */
+public class WriterMemoryManager {
+  private static final Logger log = LoggerFactory.getLogger(WriterMemoryManager.class);
+
+  static final int CHECK_INTERVAL_ROWS = 1000;
+  private static final long MIN_ALLOCATION = 1024 * 1024;
+
+  private final long budget;
+  private final Set<Allocation> allocations;
+  // The sum of the sizes of the allocations
+  private long allocated;
+
+  public WriterMemoryManager(long budget) {
+    this.budget = budget;
+    this.allocations = new LinkedHashSet<>();
+  }
+
+  /**
+   * Register a newly opened writer.
+   *
+   * @param filename the file the writer writes, for logging
+   * @param maxAllocation the row group or stripe size the writer uses without a budget
+   * @param flushable whether the writer can write out its buffered data before it's full
+   * @return the writer's allocation, which must be released when the writer is closed
+   */
+  public synchronized Allocation register(String filename, long maxAllocation, boolean flushable) {
+    long share = Math.min(maxAllocation, budget / (allocations.size() + 1));
+    long available = budget - allocated;
+    if (available < share) {
+      requestRotation(share);
+    }
+    long size = Math.min(maxAllocation, Math.max(MIN_ALLOCATION, Math.min(share, available)));
+    Allocation allocation = new Allocation(filename, size, flushable);
+    allocations.add(allocation);
+    allocated += size;
+    log.debug("Allocated {} bytes of {} for {}, {} are allocated", size, budget, filename,
+        allocated);
+    return allocation;
+  }
+
+  /**
+   * Ask the writer with the largest allocation above the given share to rotate, unless one was
+   * asked already.
+   */
+  private void requestRotation(long share) {
+    Allocation largest = null;
+    for (Allocation candidate : allocations) {
+      if (candidate.rotationRequested) {
+        return;
+      }
+      if (candidate.size > share && (largest == null || candidate.size > largest.size)) {
+        largest = candidate;
+      }
+    }
+    if (largest != null) {
+      log.debug(
+          "Writers were allocated {} bytes of {}. Rotating {} which was allocated {} bytes",
+          allocated,
+          budget,
+          largest.filename,
+          largest.size
+      );
+      largest.rotationRequested = true;
+    }
+  }
+
+  /**
+   * @return the sum of the allocations of the open writers
+   */
+  public synchronized long allocated() {
+    return allocated;
+  }
+
+  /**
+   * @return the memory all open writers last reported
+   */
+  public synchronized long totalMemoryUsage() {
+    long total = 0;
+    for (Allocation allocation : allocations) {
+      total += allocation.used;
+    }
+    return total;
+  }
+
+  private synchronized void release(Allocation allocation) {
+    if (allocations.remove(allocation)) {
+      allocated -= allocation.size;
+      log.debug(
+          "Released {} bytes allocated for {}, which last used {} bytes. {} writers remain open",
+          allocation.size,
+          allocation.filename,
+          allocation.used,
+          allocations.size()
+      );
+    }
+  }
+
+  private synchronized void report(Allocation allocation, long used) {
+    allocation.used = used;
+    long total = totalMemoryUsage();
+    if (total <= budget) {
+      return;
+    }
+    Allocation largest = null;
+    for (Allocation candidate : allocations) {
+      if (candidate.flushable && (largest == null || candidate.used > largest.used)) {
+        largest = candidate;
+      }
+    }
+    if (largest != null && !largest.flushRequested) {
+      log.debug(
+          "Writers use {} bytes, over the budget of {}. Flushing {} which uses {} bytes",
+          total,
+          budget,
+          largest.filename,
+          largest.used
+      );
+      largest.flushRequested = true;
+    }
+  }
+
+  /**
+   * The share of the budget given to one writer.
+   */
+  public final class Allocation {
+    private final String filename;
+    private final long size;
+    private final boolean flushable;
+    private int rowsSinceCheck;
+    private long used;
+    private volatile boolean flushRequested;
+    private volatile boolean rotationRequested;
+
+    private Allocation(String filename, long size, boolean flushable) {
+      this.filename = filename;
+      this.size = size;
+      this.flushable = flushable;
+    }
+
+    /**
+     * @return the row group or stripe size the writer should use
+     */
+    public long size() {
+      return size;
+    }
+
+    /**
+     * Record that a row was written, reporting the writer's memory use every
+     * {@link #CHECK_INTERVAL_ROWS} rows.
+     *
+     * @param memoryUsage the writer's estimate of the memory it uses
+     * @return true if the writer should flush its buffered data now
+     */
+    public boolean rowWritten(LongSupplier memoryUsage) {
+      if (++rowsSinceCheck >= CHECK_INTERVAL_ROWS) {
+        rowsSinceCheck = 0;
+        report(this, memoryUsage.getAsLong());
+      }
+      if (!flushRequested) {
+        return false;
+      }
+      synchronized (WriterMemoryManager.this) {
+        flushRequested = false;
+        // Reported again after the next check
+        used = 0;
+      }
+      return true;
+    }
+
+    /**
+     * @return true if the writer should be rotated to make room for other writers
+     */
+    public boolean isRotationRequested() {
+      return rotationRequested;
+    }
+
+    /**
+     * Release the allocation once the writer is closed.
+     */
+    public void release() {
+      WriterMemoryManager.this.release(this);
+    }
+  }
+}
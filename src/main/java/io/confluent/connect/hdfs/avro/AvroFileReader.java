@@ -31,19 +31,32 @@ import java.util.Iterator;
 
 import io.confluent.connect.avro.AvroData;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
 
 public class AvroFileReader
     implements io.confluent.connect.storage.format.SchemaFileReader<HdfsSinkConnectorConfig, Path> {
   private AvroData avroData;
+  private final HdfsStorage storage;
 
   public AvroFileReader(AvroData avroData) {
+    this(avroData, null);
+  }
+
+  /**
+   * @param avroData the converter of Avro schemas
+   * @param storage the storage whose FileSystem clients files are opened with, or null to use the
+   *     FileSystem cache of Hadoop
+   */
+  public AvroFileReader(AvroData avroData, HdfsStorage storage) {
     this.avroData = avroData;
+    this.storage = storage;
   }
 
   @Override
   public Schema getSchema(HdfsSinkConnectorConfig conf, Path path) {
-    try {
-      SeekableInput input = new FsInput(path, conf.getHadoopConfiguration());
+    try (SeekableInput input = storage != null
+                               ? storage.open(path.toString(), conf)
+                               : new FsInput(path, conf.getHadoopConfiguration())) {
       DatumReader<Object> reader = new GenericDatumReader<>();
       FileReader<Object> fileReader = DataFileReader.openReader(input, reader);
       org.apache.avro.Schema schema = fileReader.getSchema();
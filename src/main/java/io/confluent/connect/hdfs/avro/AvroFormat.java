@@ -42,7 +42,7 @@ public class AvroFormat
 
   @Override
   public SchemaFileReader<HdfsSinkConnectorConfig, Path> getSchemaFileReader() {
-    return new AvroFileReader(avroData);
+    return new AvroFileReader(avroData, storage);
   }
 
   @Override
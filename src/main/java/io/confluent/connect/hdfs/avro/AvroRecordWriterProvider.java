@@ -15,12 +15,13 @@
 
 package io.confluent.connect.hdfs.avro;
 
+import io.confluent.connect.hdfs.CheckpointableRecordWriter;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriter;
-import java.io.OutputStream;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.slf4j.Logger;
@@ -51,8 +52,9 @@ public class AvroRecordWriterProvider
 
   @Override
   public RecordWriter getRecordWriter(HdfsSinkConnectorConfig conf, String filename) {
-    return new RecordWriter() {
+    return new CheckpointableRecordWriter() {
       final DataFileWriter<Object> writer = new DataFileWriter<>(new GenericDatumWriter<>());
+      FSDataOutputStream out;
       Schema schema;
 
       @Override
@@ -61,7 +63,7 @@ public class AvroRecordWriterProvider
           schema = record.valueSchema();
           try {
             log.info("Opening record writer for: {}", filename);
-            final OutputStream out = storage.create(filename, true);
+            out = storage.create(filename, true);
             org.apache.avro.Schema avroSchema = avroData.fromConnectSchema(schema);
             writer.setCodec(CodecFactory.fromString(conf.getAvroCodec()));
             writer.create(avroSchema, out);
@@ -95,6 +97,27 @@ public class AvroRecordWriterProvider
 
       @Override
       public void commit() {}
+
+      @Override
+      public long size() {
+        // Excludes the block the DataFileWriter is still buffering, at most its sync interval
+        return out != null ? out.size() : 0;
+      }
+
+      @Override
+      public long checkpoint() {
+        if (out == null) {
+          return 0;
+        }
+        try {
+          // Ends the current block with a sync marker, the file is valid up to there
+          writer.flush();
+          out.hflush();
+          return out.getPos();
+        } catch (IOException e) {
+          throw new AvroIOException(e);
+        }
+      }
     };
   }
 }
@@ -17,6 +17,7 @@ package io.confluent.connect.hdfs.json;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.json.JsonConverter;
@@ -25,10 +26,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.CheckpointableRecordWriter;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriter;
 import io.confluent.connect.storage.format.RecordWriterProvider;
@@ -67,8 +68,8 @@ public class JsonRecordWriterProvider implements RecordWriterProvider<HdfsSinkCo
   @Override
   public RecordWriter getRecordWriter(HdfsSinkConnectorConfig conf, String filename) {
     try {
-      return new RecordWriter() {
-        final OutputStream out = storage.create(filename, true);
+      return new CheckpointableRecordWriter() {
+        final FSDataOutputStream out = storage.create(filename, true);
         final JsonGenerator writer = mapper.getFactory()
             .createGenerator(out)
             .setRootValueSeparator(null);
@@ -97,6 +98,22 @@ public class JsonRecordWriterProvider implements RecordWriterProvider<HdfsSinkCo
         @Override
         public void commit() {}
 
+        @Override
+        public long size() {
+          return out.size();
+        }
+
+        @Override
+        public long checkpoint() {
+          try {
+            writer.flush();
+            out.hflush();
+            return out.getPos();
+          } catch (IOException e) {
+            throw new ConnectException(e);
+          }
+        }
+
         @Override
         public void close() {
           try {
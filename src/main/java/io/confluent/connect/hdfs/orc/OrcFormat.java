@@ -16,6 +16,7 @@
 package io.confluent.connect.hdfs.orc;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.WriterMemoryManager;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.Format;
 import io.confluent.connect.storage.format.RecordWriterProvider;
@@ -25,12 +26,16 @@ import org.apache.hadoop.fs.Path;
 
 public class OrcFormat implements Format<HdfsSinkConnectorConfig, Path> {
 
+  private final WriterMemoryManager memoryManager;
+
   // DO NOT change this signature, it is required for instantiation via reflection
-  public OrcFormat(HdfsStorage storage) { }
+  public OrcFormat(HdfsStorage storage) {
+    this.memoryManager = storage.writerMemoryManager();
+  }
 
   @Override
   public RecordWriterProvider<HdfsSinkConnectorConfig> getRecordWriterProvider() {
-    return new OrcRecordWriterProvider();
+    return new OrcRecordWriterProvider(memoryManager);
   }
 
   @Override
@@ -16,6 +16,9 @@
 package io.confluent.connect.hdfs.orc;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.RecordSizeEstimator;
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
+import io.confluent.connect.hdfs.WriterMemoryManager;
 import io.confluent.connect.storage.format.RecordWriter;
 import io.confluent.connect.storage.format.RecordWriterProvider;
 import io.confluent.connect.storage.hive.HiveSchemaConverter;
@@ -29,6 +32,7 @@ import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.orc.OrcConf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +42,15 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
 
   private static final Logger log = LoggerFactory.getLogger(OrcRecordWriterProvider.class);
   private static final String EXTENSION = ".orc";
+  private final WriterMemoryManager memoryManager;
+
+  public OrcRecordWriterProvider() {
+    this(null);
+  }
+
+  OrcRecordWriterProvider(WriterMemoryManager memoryManager) {
+    this.memoryManager = memoryManager;
+  }
 
   @Override
   public String getExtension() {
@@ -48,10 +61,14 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
   public RecordWriter getRecordWriter(HdfsSinkConnectorConfig conf, String filename) {
     Path path = new Path(filename);
 
-    return new RecordWriter() {
+    return new SizeAwareRecordWriter() {
       Writer writer;
       TypeInfo typeInfo;
       Schema schema;
+      WriterMemoryManager.Allocation allocation;
+      PositionTrackingFileSystem fs;
+      long rowsInStripe;
+      long rawBytesInStripe;
 
       @Override
       public void write(SinkRecord record) {
@@ -63,6 +80,8 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
               OrcFile.WriterCallback writerCallback = new OrcFile.WriterCallback() {
                 @Override
                 public void preStripeWrite(OrcFile.WriterContext writerContext) {
+                  rowsInStripe = 0;
+                  rawBytesInStripe = 0;
                 }
 
                 @Override
@@ -73,11 +92,21 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
               typeInfo = HiveSchemaConverter.convertMaybeLogical(schema);
               ObjectInspector objectInspector = OrcStruct.createObjectInspector(typeInfo);
 
+              fs = new PositionTrackingFileSystem(
+                  path.getFileSystem(conf.getHadoopConfiguration())
+              );
+              OrcFile.WriterOptions options = OrcFile.writerOptions(conf.getHadoopConfiguration())
+                  .fileSystem(fs)
+                  .inspector(objectInspector)
+                  .callback(writerCallback);
+              if (memoryManager != null) {
+                long stripeSize = OrcConf.STRIPE_SIZE.getLong(conf.getHadoopConfiguration());
+                allocation = memoryManager.register(filename, stripeSize, true);
+                options.stripeSize(allocation.size());
+              }
+
               log.info("Opening ORC record writer for: {}", filename);
-              writer = OrcFile
-                  .createWriter(path, OrcFile.writerOptions(conf.getHadoopConfiguration())
-                      .inspector(objectInspector)
-                      .callback(writerCallback));
+              writer = OrcFile.createWriter(path, options);
             }
           }
 
@@ -92,6 +121,14 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
             Struct struct = (Struct) record.value();
             OrcStruct row = (OrcStruct) OrcUtil.convert(typeInfo, struct.schema(), struct);
             writer.addRow(row);
+            rowsInStripe++;
+            rawBytesInStripe += RecordSizeEstimator.estimate(record);
+            if (allocation != null && allocation.rowWritten(this::bufferedSize)) {
+              log.debug("Flushing the ORC stripe of {} to stay within the memory budget", filename);
+              writer.writeIntermediateFooter();
+              rowsInStripe = 0;
+              rawBytesInStripe = 0;
+            }
 
           } else {
             throw new ConnectException(
@@ -105,6 +142,10 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
 
       @Override
       public void close() {
+        if (allocation != null) {
+          allocation.release();
+          allocation = null;
+        }
         try {
           if (writer != null) {
             writer.close();
@@ -116,6 +157,45 @@ public class OrcRecordWriterProvider implements RecordWriterProvider<HdfsSinkCon
 
       @Override
       public void commit() { }
+
+      @Override
+      public boolean isRotationRequested() {
+        return allocation != null && allocation.isRotationRequested();
+      }
+
+      /**
+       * The ORC writer only knows the size of the rows in the stripes it has written, so the
+       * buffered stripe is estimated from their average row size. Before the first stripe is
+       * written this assumes the stripe is full.
+       */
+      private long bufferedSize() {
+        if (rowsInStripe == 0) {
+          return 0;
+        }
+        long rows = writer.getNumberOfRows();
+        if (rows <= 0) {
+          return allocation.size();
+        }
+        return Math.min(allocation.size(), rowsInStripe * (writer.getRawDataSize() / rows));
+      }
+
+      /**
+       * The bytes already written to the file plus the stripe still buffered by the writer. The
+       * buffered rows are assumed to encode like the rows of the stripes written so far, and to
+       * take their estimated in-memory size until the first stripe is written.
+       */
+      @Override
+      public long size() {
+        if (writer == null) {
+          return 0;
+        }
+        long written = fs.position();
+        long rows = writer.getNumberOfRows();
+        if (rows <= 0) {
+          return written + rawBytesInStripe;
+        }
+        return written + rowsInStripe * written / rows;
+      }
     };
   }
 }
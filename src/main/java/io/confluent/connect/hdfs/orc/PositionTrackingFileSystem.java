@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.orc;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+
+/**
+ * Keeps the stream of the file the ORC writer creates, so the number of bytes written to it can
+ * be read while the file is open. The status of an open HDFS file only counts complete blocks.
+ */
+class PositionTrackingFileSystem extends FilterFileSystem {
+  private FSDataOutputStream out;
+
+  PositionTrackingFileSystem(FileSystem fs) {
+    super(fs);
+  }
+
+  @Override
+  public FSDataOutputStream create(
+      Path path,
+      FsPermission permission,
+      boolean overwrite,
+      int bufferSize,
+      short replication,
+      long blockSize,
+      Progressable progress
+  ) throws IOException {
+    out = super.create(
+        path,
+        permission,
+        overwrite,
+        bufferSize,
+        replication,
+        blockSize,
+        progress
+    );
+    return out;
+  }
+
+  long position() {
+    return out != null ? out.getPos() : 0;
+  }
+}
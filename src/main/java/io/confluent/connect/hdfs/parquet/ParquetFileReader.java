@@ -16,44 +16,66 @@
 package io.confluent.connect.hdfs.parquet;
 
 import javax.annotation.Nonnull;
-import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.SchemaParseException;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.errors.DataException;
-import org.apache.parquet.avro.AvroReadSupport;
-import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Map;
 
 import io.confluent.connect.avro.AvroData;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 
 public class ParquetFileReader
     implements io.confluent.connect.storage.format.SchemaFileReader<HdfsSinkConnectorConfig, Path> {
+  // The keys AvroWriteSupport stores the Avro schema under in the footer, current and legacy
+  private static final String AVRO_SCHEMA_METADATA_KEY = "parquet.avro.schema";
+  private static final String OLD_AVRO_SCHEMA_METADATA_KEY = "avro.schema";
+
   private AvroData avroData;
 
   public ParquetFileReader(AvroData avroData) {
     this.avroData = avroData;
   }
 
+  /**
+   * Read the schema of a file from its footer, without reading any of its records. This is the
+   * Avro schema the file was written with, the one its records are read with, or the Parquet
+   * schema converted to Avro if the file was written without one.
+   *
+   * @return the schema, or null if the file has no records
+   */
   @Override
   public Schema getSchema(HdfsSinkConnectorConfig conf, Path path) {
-    AvroReadSupport<GenericRecord> readSupport = new AvroReadSupport<>();
-    ParquetReader.Builder<GenericRecord> builder = ParquetReader.builder(readSupport, path);
+    HadoopInputFile inputFile;
     try {
-      ParquetReader<GenericRecord> parquetReader = builder.withConf(conf.getHadoopConfiguration())
-          .build();
-      GenericRecord record;
-      Schema schema = null;
-      while ((record = parquetReader.read()) != null) {
-        schema = avroData.toConnectSchema(record.getSchema());
-      }
-      parquetReader.close();
-      return schema;
+      inputFile = HadoopInputFile.fromPath(path, conf.getHadoopConfiguration());
     } catch (IOException e) {
       throw new DataException(e);
     }
+    try (org.apache.parquet.hadoop.ParquetFileReader fileReader =
+             org.apache.parquet.hadoop.ParquetFileReader.open(inputFile)) {
+      if (fileReader.getRecordCount() == 0) {
+        return null;
+      }
+      FileMetaData metadata = fileReader.getFooter().getFileMetaData();
+      Map<String, String> keyValueMetadata = metadata.getKeyValueMetaData();
+      String avroSchema = keyValueMetadata.get(AVRO_SCHEMA_METADATA_KEY);
+      if (avroSchema == null) {
+        avroSchema = keyValueMetadata.get(OLD_AVRO_SCHEMA_METADATA_KEY);
+      }
+      org.apache.avro.Schema schema = avroSchema != null
+          ? new org.apache.avro.Schema.Parser().parse(avroSchema)
+          : new AvroSchemaConverter(conf.getHadoopConfiguration()).convert(metadata.getSchema());
+      return avroData.toConnectSchema(schema);
+    } catch (IOException | SchemaParseException e) {
+      throw new DataException(e);
+    }
   }
 
   @Override
@@ -19,6 +19,7 @@ import org.apache.hadoop.fs.Path;
 
 import io.confluent.connect.avro.AvroData;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.WriterMemoryManager;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriterProvider;
 import io.confluent.connect.storage.format.SchemaFileReader;
@@ -27,15 +28,17 @@ import io.confluent.connect.storage.hive.HiveFactory;
 public class ParquetFormat
     implements io.confluent.connect.storage.format.Format<HdfsSinkConnectorConfig, Path> {
   private final AvroData avroData;
+  private final WriterMemoryManager memoryManager;
 
   // DO NOT change this signature, it is required for instantiation via reflection
   public ParquetFormat(HdfsStorage storage) {
     this.avroData = new AvroData(storage.conf().avroDataConfig());
+    this.memoryManager = storage.writerMemoryManager();
   }
 
   @Override
   public RecordWriterProvider<HdfsSinkConnectorConfig> getRecordWriterProvider() {
-    return new ParquetRecordWriterProvider(avroData);
+    return new ParquetRecordWriterProvider(avroData, memoryManager);
   }
 
   @Override
@@ -15,6 +15,8 @@
 
 package io.confluent.connect.hdfs.parquet;
 
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
+import io.confluent.connect.hdfs.WriterMemoryManager;
 import io.confluent.connect.storage.format.RecordWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.fs.Path;
@@ -37,10 +39,17 @@ public class ParquetRecordWriterProvider
     implements io.confluent.connect.storage.format.RecordWriterProvider<HdfsSinkConnectorConfig> {
   private static final Logger log = LoggerFactory.getLogger(ParquetRecordWriterProvider.class);
   private static final String EXTENSION = ".parquet";
+  private static final int ROW_GROUP_SIZE = 256 * 1024 * 1024;
   private final AvroData avroData;
+  private final WriterMemoryManager memoryManager;
 
   ParquetRecordWriterProvider(AvroData avroData) {
+    this(avroData, null);
+  }
+
+  ParquetRecordWriterProvider(AvroData avroData, WriterMemoryManager memoryManager) {
     this.avroData = avroData;
+    this.memoryManager = memoryManager;
   }
 
   @Override
@@ -50,13 +59,15 @@ public class ParquetRecordWriterProvider
 
   @Override
   public RecordWriter getRecordWriter(HdfsSinkConnectorConfig conf, String filename) {
-    return new RecordWriter() {
+    return new SizeAwareRecordWriter() {
       final CompressionCodecName compressionCodecName = CompressionCodecName.SNAPPY;
-      final int blockSize = 256 * 1024 * 1024;
       final int pageSize = 64 * 1024;
       Path path = new Path(filename);
       Schema schema;
       ParquetWriter<GenericRecord> writer;
+      // Parquet writers can't write a row group before it's full, so the budget shrinks the row
+      // groups of new writers and rotates writers holding more than their share
+      WriterMemoryManager.Allocation allocation;
 
       @Override
       public void write(SinkRecord record) {
@@ -69,6 +80,11 @@ public class ParquetRecordWriterProvider
           try {
             log.info("Opening record writer for: {}", filename);
             org.apache.avro.Schema avroSchema = avroData.fromConnectSchema(schema);
+            int blockSize = ROW_GROUP_SIZE;
+            if (memoryManager != null) {
+              allocation = memoryManager.register(filename, ROW_GROUP_SIZE, false);
+              blockSize = (int) allocation.size();
+            }
             writer = AvroParquetWriter.<GenericRecord>builder(path)
                 .withSchema(avroSchema)
                 .withCompressionCodec(compressionCodecName)
@@ -100,10 +116,18 @@ public class ParquetRecordWriterProvider
         } catch (IOException e) {
           throw new ConnectException(e);
         }
+        if (allocation != null) {
+          // The data size includes row groups already written, so this is an upper bound
+          allocation.rowWritten(() -> Math.min(writer.getDataSize(), allocation.size()));
+        }
       }
 
       @Override
       public void close() {
+        if (allocation != null) {
+          allocation.release();
+          allocation = null;
+        }
         if (writer != null) {
           try {
             writer.close();
@@ -115,6 +139,17 @@ public class ParquetRecordWriterProvider
 
       @Override
       public void commit() {}
+
+      @Override
+      public boolean isRotationRequested() {
+        return allocation != null && allocation.isRotationRequested();
+      }
+
+      @Override
+      public long size() {
+        // Written row groups plus the buffered size of the current one
+        return writer != null ? writer.getDataSize() : 0;
+      }
     };
   }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.hadoop.fs.FileStatus;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variants of the metadata operations of a storage, which let callers issue many of
+ * them at once instead of waiting for each in turn. Failures complete the futures exceptionally
+ * with the exception the blocking operation would throw, and operations issued once the storage
+ * is closed fail with a {@link org.apache.kafka.connect.errors.ConnectException}.
+ */
+public interface AsyncStorage {
+
+  /**
+   * @param filename the file or directory
+   * @return a future completed with whether the file or directory exists
+   */
+  CompletableFuture<Boolean> existsAsync(String filename);
+
+  /**
+   * @param filename the directory to create, along with its missing parents
+   * @return a future completed with whether the directory was created
+   */
+  CompletableFuture<Boolean> createAsync(String filename);
+
+  /**
+   * @param tempFile the file to commit
+   * @param committedFile the name to commit it as
+   * @return a future completed once the file is committed
+   */
+  CompletableFuture<Void> commitAsync(String tempFile, String committedFile);
+
+  /**
+   * @param filename the file or directory to delete, recursively
+   * @return a future completed once the file or directory is deleted
+   */
+  CompletableFuture<Void> deleteAsync(String filename);
+
+  /**
+   * @param path the directory
+   * @return a future completed with the statuses of the directory's entries
+   */
+  CompletableFuture<List<FileStatus>> listAsync(String path);
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded set of directories known to exist, least recently used first. Directories are only
+ * removed from HDFS outside of the connector, which shows as a rename into them failing, after
+ * which the cache is cleared.
+ */
+final class DirectoryCache {
+  private final Map<String, Boolean> directories;
+  private long hits;
+
+  DirectoryCache(final int maxEntries) {
+    this.directories = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param directory the directory
+   * @return true if the directory is known to exist
+   */
+  synchronized boolean contains(String directory) {
+    if (directories.get(directory) == null) {
+      return false;
+    }
+    hits++;
+    return true;
+  }
+
+  synchronized void add(String directory) {
+    directories.put(directory, Boolean.TRUE);
+  }
+
+  synchronized void clear() {
+    directories.clear();
+  }
+
+  /**
+   * @return the number of times a directory was known to exist
+   */
+  synchronized long hits() {
+    return hits;
+  }
+}
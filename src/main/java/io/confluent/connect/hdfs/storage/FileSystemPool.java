@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reference-counted {@link FileSystem} instances shared by the streams of a storage, one per file
+ * system. Sharing them saves setting up a new client, and on secure clusters authenticating it,
+ * for every file that is written or read.
+ *
+ * <p>Instances are kept open while they're not used, until the pool is closed. Instances that are
+ * still used then are closed once they're released. </p>
+ */
+final class FileSystemPool implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(FileSystemPool.class);
+
+  private final Configuration conf;
+  private final Map<String, PooledFileSystem> fileSystems;
+  private long created;
+  private long reused;
+  private boolean closed;
+
+  FileSystemPool(Configuration conf) {
+    this.conf = conf;
+    this.fileSystems = new HashMap<>();
+  }
+
+  /**
+   * Get the file system of a path, which must be released once it's no longer used.
+   *
+   * @param path the path
+   * @return the file system
+   * @throws IOException if the pool is closed or the file system can't be created
+   */
+  synchronized FileSystem acquire(Path path) throws IOException {
+    if (closed) {
+      throw new IOException("FileSystem pool is closed");
+    }
+    String key = key(path);
+    PooledFileSystem pooled = fileSystems.get(key);
+    if (pooled == null) {
+      // this creates one entry in org.apache.hadoop.fs.FileSystem.CACHE
+      pooled = new PooledFileSystem(FileSystem.newInstance(path.toUri(), conf));
+      fileSystems.put(key, pooled);
+      created++;
+      log.debug("Created FileSystem for {}", key);
+    } else {
+      reused++;
+    }
+    pooled.references++;
+    return pooled.fs;
+  }
+
+  /**
+   * Release the file system of a path acquired before.
+   *
+   * @param path the path the file system was acquired for
+   * @throws IOException if the pool is closed and the file system can't be closed
+   */
+  synchronized void release(Path path) throws IOException {
+    String key = key(path);
+    PooledFileSystem pooled = fileSystems.get(key);
+    if (pooled == null) {
+      return;
+    }
+    if (--pooled.references == 0 && closed) {
+      fileSystems.remove(key);
+      pooled.fs.close();
+    }
+  }
+
+  /**
+   * @return the number of file systems created
+   */
+  synchronized long created() {
+    return created;
+  }
+
+  /**
+   * @return the number of times a file system was shared instead of being created
+   */
+  synchronized long reused() {
+    return reused;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    log.debug("Closing FileSystem pool which created {} and reused {} instances", created, reused);
+    IOException exception = null;
+    Iterator<PooledFileSystem> iterator = fileSystems.values().iterator();
+    while (iterator.hasNext()) {
+      PooledFileSystem pooled = iterator.next();
+      if (pooled.references > 0) {
+        log.debug("FileSystem is still used by {} streams, closing it once released",
+            pooled.references);
+        continue;
+      }
+      iterator.remove();
+      try {
+        pooled.fs.close();
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  private static String key(Path path) {
+    // Paths without a scheme are on the default file system
+    URI uri = path.toUri();
+    return uri.getScheme() == null ? "" : uri.getScheme() + "://" + uri.getAuthority();
+  }
+
+  private static final class PooledFileSystem {
+    private final FileSystem fs;
+    private int references;
+
+    private PooledFileSystem(FileSystem fs) {
+      this.fs = fs;
+    }
+  }
+}
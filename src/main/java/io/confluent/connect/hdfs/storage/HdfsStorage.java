@@ -17,10 +17,13 @@ package io.confluent.connect.hdfs.storage;
 
 import org.apache.avro.file.SeekableInput;
 import org.apache.avro.mapred.FsInput;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.ConnectException;
 
@@ -29,28 +32,49 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.WriterMemoryManager;
 import io.confluent.connect.hdfs.wal.FSWAL;
+import io.confluent.connect.hdfs.wal.SegmentedWAL;
+import io.confluent.connect.hdfs.wal.TaskWAL;
 import io.confluent.connect.hdfs.wal.WAL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class HdfsStorage
     implements io.confluent.connect.storage.Storage<HdfsSinkConnectorConfig, List<FileStatus>>,
-    Storage {
+    Storage, AsyncStorage {
 
   private static final Logger log = LoggerFactory.getLogger(HdfsStorage.class);
 
   private final FileSystem fs;
   private final HdfsSinkConnectorConfig conf;
   private final String url;
+  // Shared by the streams of create(String, HdfsSinkConnectorConfig, boolean) and open()
+  private final FileSystemPool fileSystemPool;
+  private final DirectoryCache directoryCache;
+  // Runs the operations of AsyncStorage, created when first used and shut down on close
+  private ExecutorService asyncExecutor;
+  private boolean closed = false;
+  // Shared by the topic partitions of the task if enabled, created when first used
+  private TaskWAL taskWal;
+  // Shared by the record writers of the task if a budget is set, created when first used
+  private WriterMemoryManager writerMemoryManager;
 
   // Visible for testing.
   protected HdfsStorage(HdfsSinkConnectorConfig conf,  String url, FileSystem fs) {
     this.conf = conf;
     this.url = url;
     this.fs = fs;
+    this.fileSystemPool = new FileSystemPool(conf.getHadoopConfiguration());
+    this.directoryCache = new DirectoryCache(conf.directoryCacheMaxEntries());
   }
 
   public HdfsStorage(HdfsSinkConnectorConfig conf,  String url) throws IOException {
@@ -58,6 +82,8 @@ public class HdfsStorage
     this.url = url;
     // this creates one entry in org.apache.hadoop.fs.FileSystem.CACHE
     fs = FileSystem.newInstance(URI.create(url), conf.getHadoopConfiguration());
+    this.fileSystemPool = new FileSystemPool(conf.getHadoopConfiguration());
+    this.directoryCache = new DirectoryCache(conf.directoryCacheMaxEntries());
   }
 
   public List<FileStatus> list(String path, PathFilter filter) {
@@ -91,7 +117,7 @@ public class HdfsStorage
     }
   }
 
-  public OutputStream create(String filename, boolean overwrite) {
+  public FSDataOutputStream create(String filename, boolean overwrite) {
     try {
       return fs.create(new Path(filename), overwrite);
     } catch (IOException e) {
@@ -99,13 +125,20 @@ public class HdfsStorage
     }
   }
 
+  /**
+   * Create a file using a {@link FileSystem} shared with the other streams of this storage, which
+   * is released when the stream is closed. The Hadoop configuration of the storage is used rather
+   * than that of the given config.
+   */
   @Override
   public OutputStream create(String filename, HdfsSinkConnectorConfig conf, boolean overwrite) {
     final Path path = new Path(filename);
+    final FileSystem pooledFs = acquireFileSystem(path);
     try {
       return new OutputStream() {
-        FileSystem fs = FileSystem.newInstance(path.toUri(), conf.getHadoopConfiguration());
-        OutputStream file = fs.create(new Path(filename), overwrite);
+        final OutputStream file = pooledFs.create(path, overwrite);
+        boolean closed = false;
+
         @Override
         public void write(final int b) throws IOException {
           file.write(b);
@@ -128,22 +161,76 @@ public class HdfsStorage
 
         @Override
         public void close() throws IOException {
+          if (closed) {
+            return;
+          }
+          closed = true;
           try {
             file.close();
           } finally {
-            try {
-              fs.close();
-            } catch (Throwable t) {
-              log.error("Could not close FileSystem", t);
-            }
+            releaseFileSystem(path);
           }
         }
       };
     } catch (IOException e) {
+      releaseFileSystem(path);
       throw new ConnectException(e);
     }
   }
 
+  /**
+   * Create a directory unless it exists. Directories this storage has seen exist are remembered,
+   * which saves the calls to the NameNode the next time.
+   *
+   * @param directory the directory
+   */
+  public void ensureDirectory(String directory) {
+    if (directoryCache.contains(directory)) {
+      return;
+    }
+    if (!exists(directory)) {
+      log.trace("Creating directory {}", directory);
+      create(directory);
+    }
+    directoryCache.add(directory);
+  }
+
+  /**
+   * Like {@link #ensureDirectory(String)}, without blocking. Completes right away if the directory
+   * is known to exist.
+   *
+   * @param directory the directory
+   * @return a future completed once the directory exists
+   */
+  public CompletableFuture<Void> ensureDirectoryAsync(String directory) {
+    if (directoryCache.contains(directory)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return existsAsync(directory)
+        .thenCompose(
+            exists -> exists ? CompletableFuture.completedFuture(true) : createAsync(directory)
+        )
+        .thenRun(() -> directoryCache.add(directory));
+  }
+
+  /**
+   * @return the memory budget shared by the record writers of the task, or null if there's none
+   */
+  public synchronized WriterMemoryManager writerMemoryManager() {
+    long budget = conf.writerMemoryBudgetBytes();
+    if (writerMemoryManager == null && budget > 0) {
+      writerMemoryManager = new WriterMemoryManager(budget);
+    }
+    return writerMemoryManager;
+  }
+
+  /**
+   * @return the number of existence checks of directories saved by knowing they exist
+   */
+  public long directoryChecksSaved() {
+    return directoryCache.hits();
+  }
+
   @Override
   public boolean exists(String filename) {
     try {
@@ -157,6 +244,80 @@ public class HdfsStorage
     renameFile(tempFile, committedFile);
   }
 
+  /**
+   * Replace a file with another one, in a single rename on HDFS so that readers see either of the
+   * two files whole.
+   *
+   * @param sourceFile the file to move
+   * @param targetFile the file to replace, which may not exist
+   */
+  public void replace(String sourceFile, String targetFile) {
+    try {
+      Path srcPath = new Path(sourceFile);
+      Path dstPath = new Path(targetFile);
+      if (fs instanceof DistributedFileSystem) {
+        ((DistributedFileSystem) fs).rename(srcPath, dstPath, Options.Rename.OVERWRITE);
+      } else {
+        fs.delete(dstPath, false);
+        fs.rename(srcPath, dstPath);
+      }
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  /**
+   * Recover the lease on a file that a writer which is gone may still hold open.
+   *
+   * @param filename the file
+   * @return true if the file is closed and can be modified
+   */
+  public boolean recoverLease(String filename) {
+    if (!(fs instanceof DistributedFileSystem)) {
+      return true;
+    }
+    try {
+      return ((DistributedFileSystem) fs).recoverLease(new Path(filename));
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  /**
+   * @param filename the file
+   * @return true if the file is not open for writing
+   */
+  public boolean isFileClosed(String filename) {
+    if (!(fs instanceof DistributedFileSystem)) {
+      return true;
+    }
+    try {
+      return ((DistributedFileSystem) fs).isFileClosed(new Path(filename));
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  /**
+   * Truncate a file to the given length, if it is longer.
+   *
+   * @param filename the file, which must be closed
+   * @param length the new length of the file
+   * @return true if the file can be used right away, false if the file system still adjusts its
+   *     last block in the background, until which the file is not closed
+   */
+  public boolean truncate(String filename, long length) {
+    try {
+      Path path = new Path(filename);
+      if (fs.getFileStatus(path).getLen() <= length) {
+        return true;
+      }
+      return fs.truncate(path, length);
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
   @Override
   public void delete(String filename) {
     try {
@@ -166,8 +327,106 @@ public class HdfsStorage
     }
   }
 
+  @Override
+  public CompletableFuture<Boolean> existsAsync(String filename) {
+    return supplyAsync(() -> exists(filename));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> createAsync(String filename) {
+    return supplyAsync(() -> create(filename));
+  }
+
+  @Override
+  public CompletableFuture<Void> commitAsync(String tempFile, String committedFile) {
+    return supplyAsync(() -> {
+      commit(tempFile, committedFile);
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteAsync(String filename) {
+    return supplyAsync(() -> {
+      delete(filename);
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<List<FileStatus>> listAsync(String path) {
+    return supplyAsync(() -> list(path));
+  }
+
+  /**
+   * Run a blocking operation on the bounded executor of this storage. The Hadoop client has no
+   * asynchronous API for these operations that is public and stable across versions. Once the
+   * storage is closed the returned future fails with a {@link ConnectException}.
+   */
+  private synchronized <T> CompletableFuture<T> supplyAsync(Supplier<T> operation) {
+    // Submitted while holding the lock, so close() can't shut the executor down in between
+    if (closed) {
+      CompletableFuture<T> future = new CompletableFuture<>();
+      future.completeExceptionally(new ConnectException("Storage for " + url + " is closed"));
+      return future;
+    }
+    if (asyncExecutor == null) {
+      asyncExecutor = Executors.newFixedThreadPool(
+          conf.storageAsyncThreads(),
+          new AsyncThreadFactory(url)
+      );
+    }
+    return CompletableFuture.supplyAsync(operation, asyncExecutor);
+  }
+
+  /**
+   * Names the threads of the executor after the storage, so they can be told apart in thread
+   * dumps, and makes them daemons, so a storage that isn't closed doesn't keep the worker alive.
+   */
+  private static class AsyncThreadFactory implements ThreadFactory {
+    private static final AtomicInteger STORAGES = new AtomicInteger();
+
+    private final String prefix;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    AsyncThreadFactory(String url) {
+      this.prefix = "hdfs-storage-" + STORAGES.incrementAndGet() + "-async-";
+      log.debug("Creating async threads {}* for {}", prefix, url);
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
   @Override
   public void close() {
+    TaskWAL taskWal;
+    synchronized (this) {
+      closed = true;
+      if (asyncExecutor != null) {
+        // Queued operations still run, and fail once the FileSystem is closed, so that every
+        // future returned is completed
+        asyncExecutor.shutdown();
+        asyncExecutor = null;
+      }
+      taskWal = this.taskWal;
+    }
+    if (taskWal != null) {
+      try {
+        taskWal.close();
+      } catch (ConnectException e) {
+        log.error("Could not close task WAL", e);
+      }
+    }
+    try {
+      fileSystemPool.close();
+    } catch (IOException e) {
+      log.error("Could not close pooled FileSystems", e);
+    }
     if (fs != null) {
       try {
         fs.close();
@@ -177,8 +436,48 @@ public class HdfsStorage
     }
   }
 
+  /**
+   * @return the number of FileSystem clients created for the streams of this storage
+   */
+  public long fileSystemClientsCreated() {
+    return fileSystemPool.created();
+  }
+
+  /**
+   * @return the number of times a stream of this storage shared an existing FileSystem client
+   */
+  public long fileSystemClientsReused() {
+    return fileSystemPool.reused();
+  }
+
+  private FileSystem acquireFileSystem(Path path) {
+    try {
+      return fileSystemPool.acquire(path);
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  private void releaseFileSystem(Path path) {
+    try {
+      fileSystemPool.release(path);
+    } catch (IOException e) {
+      log.error("Could not close FileSystem", e);
+    }
+  }
+
   public WAL wal(String topicsDir, TopicPartition topicPart) {
-    return new FSWAL(topicsDir, topicPart, this);
+    if (!conf.walTaskEnabled()) {
+      return conf.walSegmentBytes() > 0
+             ? new SegmentedWAL(topicsDir, topicPart, this)
+             : new FSWAL(topicsDir, topicPart, this);
+    }
+    synchronized (this) {
+      if (taskWal == null) {
+        taskWal = new TaskWAL(this);
+      }
+    }
+    return taskWal.forPartition(topicPart, new FSWAL(topicsDir, topicPart, this));
   }
 
   @Override
@@ -198,7 +497,12 @@ public class HdfsStorage
     try {
       final Path srcPath = new Path(sourcePath);
       final Path dstPath = new Path(targetPath);
-      if (fs.exists(srcPath)) {
+      if (fs.exists(srcPath) && !fs.rename(srcPath, dstPath)
+          && !fs.exists(dstPath.getParent())) {
+        // The directory was removed since it was last seen
+        log.warn("Directory of {} no longer exists, creating it again", targetPath);
+        directoryCache.clear();
+        fs.mkdirs(dstPath.getParent());
         fs.rename(srcPath, dstPath);
       }
     } catch (IOException e) {
@@ -206,11 +510,55 @@ public class HdfsStorage
     }
   }
 
+  /**
+   * Open a file using a {@link FileSystem} shared with the other streams of this storage, which is
+   * released when the input is closed. The Hadoop configuration of the storage is used rather than
+   * that of the given config.
+   */
   @Override
   public SeekableInput open(String filename, HdfsSinkConnectorConfig conf) {
+    final Path path = new Path(filename);
+    final FileSystem pooledFs = acquireFileSystem(path);
     try {
-      return new FsInput(new Path(filename), conf.getHadoopConfiguration());
+      final FsInput input = new FsInput(path, pooledFs);
+      return new SeekableInput() {
+        boolean closed = false;
+
+        @Override
+        public void seek(long p) throws IOException {
+          input.seek(p);
+        }
+
+        @Override
+        public long tell() throws IOException {
+          return input.tell();
+        }
+
+        @Override
+        public long length() throws IOException {
+          return input.length();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          return input.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+          if (closed) {
+            return;
+          }
+          closed = true;
+          try {
+            input.close();
+          } finally {
+            releaseFileSystem(path);
+          }
+        }
+      };
     } catch (IOException e) {
+      releaseFileSystem(path);
       throw new ConnectException(e);
     }
   }
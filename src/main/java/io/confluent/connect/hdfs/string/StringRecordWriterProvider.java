@@ -15,6 +15,7 @@
 
 package io.confluent.connect.hdfs.string;
 
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.slf4j.Logger;
@@ -22,11 +23,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.CheckpointableRecordWriter;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriter;
 import io.confluent.connect.storage.format.RecordWriterProvider;
@@ -57,8 +58,8 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
 
   @Override
   public RecordWriter getRecordWriter(final HdfsSinkConnectorConfig conf, final String filename) {
-    return new RecordWriter() {
-      final OutputStream out = storage.create(filename, true);
+    return new CheckpointableRecordWriter() {
+      final FSDataOutputStream out = storage.create(filename, true);
       final OutputStreamWriter streamWriter = new OutputStreamWriter(out, Charset.defaultCharset());
       final BufferedWriter writer = new BufferedWriter(streamWriter, WRITER_BUFFER_SIZE);
 
@@ -76,6 +77,23 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
       @Override
       public void commit() {}
 
+      @Override
+      public long size() {
+        // Excludes what is still held in the writer's buffer
+        return out.size();
+      }
+
+      @Override
+      public long checkpoint() {
+        try {
+          writer.flush();
+          out.hflush();
+          return out.getPos();
+        } catch (IOException e) {
+          throw new ConnectException(e);
+        }
+      }
+
       @Override
       public void close() {
         try {
@@ -15,22 +15,30 @@
 
 package io.confluent.connect.hdfs.wal;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.hadoop.hdfs.CannotObtainBlockLengthException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import io.confluent.connect.hdfs.FileUtils;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
@@ -43,20 +51,46 @@ public class FSWAL implements WAL {
 
   private static final Logger log = LoggerFactory.getLogger(FSWAL.class);
   private static final String TRUNCATED_LOG_EXTENSION = ".1";
+  // The size of the tail of the WAL first searched for its last filled block, doubled until found
+  static final long TAIL_WINDOW_BYTES = 64 * 1024;
+  // A checkpoint is a group of "CHECKPOINT:<durable length>:<temp file>" entries, whose values
+  // are the files the temp files would be committed as, closed by a CHECKPOINT_END entry.
+  private static final String CHECKPOINT_PREFIX = "CHECKPOINT:";
+  private static final String CHECKPOINT_END_MARKER = "CHECKPOINT_END";
+  // Marks that every block before it was applied, so apply skips them
+  static final String APPLIED_MARKER = "APPLIED";
+  // How long recovery is retried for the temp files of a checkpoint to be closed before they're
+  // given up on. Longer than a lease wait, since retrying doesn't block the task.
+  static final long CHECKPOINT_CLOSE_TIMEOUT_MS = 60000L;
 
   private final HdfsSinkConnectorConfig conf;
   private final HdfsStorage storage;
   private final String logFile;
+  // Whether the WAL is renamed when truncated, rather than being a segment of a SegmentedWAL
+  private final boolean renamedOnTruncate;
+  private final boolean hsync;
+  private final Time time;
 
   protected WALFile.Writer writer = null;
   private WALFile.Reader reader = null;
+  // The last checkpoint read by apply, whose temp files weren't closed yet, and since when
+  private Collection<Checkpoint> pendingCheckpoints = null;
+  private long pendingCheckpointsSinceMs = -1L;
+  // Whether blocks were appended or applied since the last APPLIED marker
+  private boolean unapplied = false;
 
   public FSWAL(String logsDir, TopicPartition topicPart, HdfsStorage storage)
       throws ConnectException {
+    this(storage, FileUtils.logFileName(storage.url(), logsDir, topicPart), true);
+  }
+
+  FSWAL(HdfsStorage storage, String logFile, boolean renamedOnTruncate) {
     this.storage = storage;
     this.conf = storage.conf();
-    String url = storage.url();
-    logFile = FileUtils.logFileName(url, logsDir, topicPart);
+    this.logFile = logFile;
+    this.renamedOnTruncate = renamedOnTruncate;
+    hsync = conf.walSyncMode().equals(HdfsSinkConnectorConfig.WAL_SYNC_MODE_HSYNC);
+    time = Time.SYSTEM;
   }
 
   @Override
@@ -66,7 +100,8 @@ public class FSWAL implements WAL {
       WALEntry key = new WALEntry(tempFile);
       WALEntry value = new WALEntry(committedFile);
       writer.append(key, value);
-      writer.hsync();
+      sync();
+      unapplied = true;
     } catch (IOException e) {
       log.error("Error appending WAL file: {}, {}", logFile, e);
       close();
@@ -74,71 +109,188 @@ public class FSWAL implements WAL {
     }
   }
 
+  /**
+   * Append a BEGIN-END block of file entries, which is synced once after its END marker.
+   */
+  @Override
+  public void appendBlock(Map<String, String> entries) throws ConnectException {
+    try {
+      acquireLease();
+      writer.append(new WALEntry(beginMarker), new WALEntry(""));
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        writer.append(new WALEntry(entry.getKey()), new WALEntry(entry.getValue()));
+      }
+      writer.append(new WALEntry(endMarker), new WALEntry(""));
+      sync();
+      unapplied = true;
+    } catch (IOException e) {
+      log.error("Error appending block to WAL file: {}, {}", logFile, e);
+      close();
+      throw new DataException(e);
+    }
+  }
+
+  private void sync() throws IOException {
+    if (hsync) {
+      writer.hsync();
+    } else {
+      writer.hflush();
+    }
+  }
+
+  /**
+   * Record that the open temp files of the topic partition can be read up to the given lengths.
+   * If the task fails before they're committed, recovery truncates the temp files of the last
+   * checkpoint to these lengths and commits them, instead of deleting them and reading their
+   * records from Kafka again.
+   *
+   * <p>The checkpoint must include every temp file with records up to the last offset of the
+   * checkpoint, since recovery resumes after the latest committed offset. </p>
+   *
+   * @param checkpoints the durable length and committed file name of each open temp file
+   */
+  public void checkpoint(Collection<Checkpoint> checkpoints) throws ConnectException {
+    try {
+      acquireLease();
+      for (Checkpoint checkpoint : checkpoints) {
+        WALEntry key = new WALEntry(
+            CHECKPOINT_PREFIX + checkpoint.length + ":" + checkpoint.tempFile
+        );
+        writer.append(key, new WALEntry(checkpoint.committedFile));
+      }
+      writer.append(new WALEntry(CHECKPOINT_END_MARKER), new WALEntry(""));
+      // The temp files are only flushed as well, so they and the checkpoint survive the loss of
+      // the worker but not of the whole cluster
+      writer.hflush();
+      unapplied = true;
+    } catch (IOException e) {
+      log.error("Error appending checkpoint to WAL file: {}, {}", logFile, e);
+      close();
+      throw new DataException(e);
+    }
+  }
+
+  /**
+   * Append an APPLIED marker once every block of the WAL was applied, so that applying the WAL
+   * again skips them rather than committing their files again. Nothing is appended if no block
+   * was appended or applied since the last marker.
+   */
+  public void markApplied() throws ConnectException {
+    if (!unapplied) {
+      return;
+    }
+    try {
+      acquireLease();
+      writer.append(new WALEntry(APPLIED_MARKER), new WALEntry(""));
+      sync();
+      unapplied = false;
+    } catch (IOException e) {
+      log.error("Error appending APPLIED marker to WAL file: {}, {}", logFile, e);
+      close();
+      throw new DataException(e);
+    }
+  }
+
   public void acquireLease() throws ConnectException {
     log.debug("Attempting to acquire lease for WAL file: {}", logFile);
     long sleepIntervalMs = WALConstants.INITIAL_SLEEP_INTERVAL_MS;
-    while (sleepIntervalMs < WALConstants.MAX_SLEEP_INTERVAL_MS) {
+    while (writer == null && !tryCreateWriter()) {
+      if (sleepIntervalMs >= WALConstants.MAX_SLEEP_INTERVAL_MS) {
+        throw new ConnectException("Cannot acquire lease after timeout, will retry.");
+      }
       try {
-        if (writer == null) {
-          writer = WALFile.createWriter(conf, Writer.file(new Path(logFile)),
-                                        Writer.appendIfExists(true));
-          log.debug(
-              "Successfully acquired lease, {}-{}, file {}",
-              conf.name(),
-              conf.getTaskId(),
-              logFile
-          );
-        }
-        break;
-      } catch (RemoteException e) {
-        if (e.getClassName().equals(WALConstants.LEASE_EXCEPTION_CLASS_NAME)) {
-          log.warn(
-              "Cannot acquire lease on WAL, {}-{}, file {}",
+        Thread.sleep(sleepIntervalMs);
+      } catch (InterruptedException ie) {
+        throw new ConnectException(ie);
+      }
+      sleepIntervalMs = sleepIntervalMs * 2;
+    }
+  }
+
+  @Override
+  public boolean tryAcquireLease() throws ConnectException {
+    return writer != null || !storage.exists(logFile) || tryCreateWriter();
+  }
+
+  /**
+   * @return false if another task holds the lease on the WAL file
+   */
+  private boolean tryCreateWriter() {
+    try {
+      writer = WALFile.createWriter(conf, Writer.file(new Path(logFile)),
+                                    Writer.appendIfExists(true));
+      log.debug(
+          "Successfully acquired lease, {}-{}, file {}",
+          conf.name(),
+          conf.getTaskId(),
+          logFile
+      );
+      return true;
+    } catch (RemoteException e) {
+      if (e.getClassName().equals(WALConstants.LEASE_EXCEPTION_CLASS_NAME)) {
+        log.warn(
+            "Cannot acquire lease on WAL, {}-{}, file {}",
+            conf.name(),
+            conf.getTaskId(),
+            logFile
+        );
+        return false;
+      }
+      throw new ConnectException(e);
+    } catch (IOException e) {
+      throw new DataException(
+          String.format(
+              "Error creating writer for log file, %s-%s, file %s",
               conf.name(),
               conf.getTaskId(),
               logFile
-          );
-          try {
-            Thread.sleep(sleepIntervalMs);
-          } catch (InterruptedException ie) {
-            throw new ConnectException(ie);
-          }
-          sleepIntervalMs = sleepIntervalMs * 2;
-        } else {
-          throw new ConnectException(e);
-        }
-      } catch (IOException e) {
-        throw new DataException(
-            String.format(
-                "Error creating writer for log file, %s-%s, file %s",
-                conf.name(),
-                conf.getTaskId(),
-                logFile
-            ),
-            e
-        );
-      }
-    }
-    if (sleepIntervalMs >= WALConstants.MAX_SLEEP_INTERVAL_MS) {
-      throw new ConnectException("Cannot acquire lease after timeout, will retry.");
+          ),
+          e
+      );
     }
   }
 
   @Override
   public void apply() throws ConnectException {
+    if (!tryApply()) {
+      throw new ConnectException(
+          "Temp files checkpointed in WAL file " + logFile + " are not closed yet, will retry"
+      );
+    }
+  }
+
+  /**
+   * Apply the WAL without waiting for the temp files of its last checkpoint to be closed. The file
+   * system recovers their leases and truncates them in the background, and the checkpoint is
+   * committed by a later call once it's done, without reading the WAL again.
+   */
+  @Override
+  public boolean tryApply() throws ConnectException {
     log.debug("Starting to apply WAL: {}", logFile);
-    if (!storage.exists(logFile)) {
+    if (pendingCheckpoints == null && !storage.exists(logFile)) {
       log.debug("WAL file does not exist: {}", logFile);
-      return;
+      return true;
     }
     acquireLease();
     log.debug("Lease acquired");
 
     try {
-      if (reader == null) {
-        reader = newWalFileReader(logFile);
+      if (pendingCheckpoints == null) {
+        if (reader == null) {
+          reader = newWalFileReader(logFile);
+        }
+        Collection<Checkpoint> checkpoints = commitWalEntriesToStorage();
+        if (!checkpoints.isEmpty()) {
+          pendingCheckpoints = checkpoints;
+          pendingCheckpointsSinceMs = time.milliseconds();
+        }
+      }
+      if (pendingCheckpoints != null) {
+        if (!commitCheckpointedFiles(pendingCheckpoints)) {
+          return false;
+        }
+        pendingCheckpoints = null;
       }
-      commitWalEntriesToStorage();
     } catch (CorruptWalFileException e) {
       log.error("Error applying WAL file '{}' because it is corrupted: {}", logFile, e);
       log.warn("Truncating and skipping corrupt WAL file '{}'.", logFile);
@@ -154,29 +306,52 @@ public class FSWAL implements WAL {
       throw new DataException(e);
     }
     log.debug("Finished applying WAL: {}", logFile);
+    return true;
   }
 
   /**
-   * Read all the filepath entries in the WAL file, commit the pending ones to HdfsStorage
+   * Read all the filepath entries in the WAL file, commit the pending ones to HdfsStorage. Blocks
+   * before the last APPLIED marker are skipped.
    *
+   * @return the last checkpoint, if its temp files were not committed since
    * @throws IOException when the WAL reader is unable to get the next entry
    */
-  private void commitWalEntriesToStorage() throws IOException {
+  private Collection<Checkpoint> commitWalEntriesToStorage() throws IOException {
     Map<WALEntry, WALEntry> entries = new HashMap<>();
+    List<Map<WALEntry, WALEntry>> blocks = new ArrayList<>();
+    Map<String, Checkpoint> checkpoints = new HashMap<>();
+    Map<String, Checkpoint> lastCheckpoint = new HashMap<>();
     WALEntry key = new WALEntry();
     WALEntry value = new WALEntry();
     while (reader.next(key, value)) {
       String keyName = key.getName();
       if (keyName.equals(beginMarker)) {
-        entries.clear();
+        entries = new HashMap<>();
       } else if (keyName.equals(endMarker)) {
-        commitEntriesToStorage(entries);
+        blocks.add(entries);
+        entries = new HashMap<>();
+        // Rotations commit every open temp file, including those of earlier checkpoints
+        lastCheckpoint.clear();
+      } else if (keyName.equals(APPLIED_MARKER)) {
+        blocks.clear();
+        lastCheckpoint.clear();
+      } else if (keyName.startsWith(CHECKPOINT_PREFIX)) {
+        Checkpoint checkpoint = Checkpoint.parse(keyName, value.getName());
+        checkpoints.put(checkpoint.tempFile, checkpoint);
+      } else if (keyName.equals(CHECKPOINT_END_MARKER)) {
+        lastCheckpoint = checkpoints;
+        checkpoints = new HashMap<>();
       } else {
         WALEntry mapKey = new WALEntry(key.getName());
         WALEntry mapValue = new WALEntry(value.getName());
         entries.put(mapKey, mapValue);
       }
     }
+    for (Map<WALEntry, WALEntry> block : blocks) {
+      commitEntriesToStorage(block);
+    }
+    unapplied |= !blocks.isEmpty() || !lastCheckpoint.isEmpty();
+    return lastCheckpoint.values();
   }
 
   /**
@@ -186,13 +361,169 @@ public class FSWAL implements WAL {
    * @param entries a map of filepath entries containing temp and committed paths
    */
   private void commitEntriesToStorage(Map<WALEntry, WALEntry> entries) {
+    Map<String, String> files = new HashMap<>();
     for (Map.Entry<WALEntry, WALEntry> entry: entries.entrySet()) {
-      String tempFile = entry.getKey().getName();
-      String committedFile = entry.getValue().getName();
-      if (!storage.exists(committedFile)) {
-        storage.commit(tempFile, committedFile);
+      files.put(entry.getKey().getName(), entry.getValue().getName());
+    }
+    commitFiles(storage, files);
+  }
+
+  /**
+   * Commit the temp files of a WAL block whose committed files don't exist yet. The committed
+   * files are grouped by directory and one listing of each directory tells which of them exist,
+   * rather than checking each file. A directory with a single committed file is checked with
+   * an existence check instead, which is cheaper than listing it. The remaining renames are
+   * issued at once.
+   *
+   * @param storage the storage of the files
+   * @param files the committed file of each temp file
+   */
+  static void commitFiles(HdfsStorage storage, Map<String, String> files) {
+    Map<String, Map<String, String>> directories = new HashMap<>();
+    for (Map.Entry<String, String> entry: files.entrySet()) {
+      String directory = new Path(entry.getValue()).getParent().toString();
+      directories.computeIfAbsent(directory, d -> new HashMap<>())
+          .put(entry.getKey(), entry.getValue());
+    }
+
+    List<CompletableFuture<Void>> commits = new ArrayList<>();
+    for (Map.Entry<String, Map<String, String>> directory : directories.entrySet()) {
+      Map<String, String> directoryFiles = directory.getValue();
+      if (directoryFiles.size() == 1) {
+        Map.Entry<String, String> file = directoryFiles.entrySet().iterator().next();
+        commits.add(storage.existsAsync(file.getValue()).thenCompose(
+            exists -> exists
+                      ? CompletableFuture.<Void>completedFuture(null)
+                      : storage.commitAsync(file.getKey(), file.getValue())
+        ));
+      } else {
+        commits.add(listNames(storage, directory.getKey()).thenCompose(existing -> {
+          List<CompletableFuture<Void>> renames = new ArrayList<>();
+          for (Map.Entry<String, String> file : directoryFiles.entrySet()) {
+            if (!existing.contains(new Path(file.getValue()).getName())) {
+              renames.add(storage.commitAsync(file.getKey(), file.getValue()));
+            }
+          }
+          return CompletableFuture.allOf(renames.toArray(new CompletableFuture<?>[0]));
+        }));
+      }
+    }
+    try {
+      CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof ConnectException) {
+        throw (ConnectException) e.getCause();
+      }
+      throw new ConnectException(e.getCause());
+    }
+  }
+
+  /**
+   * List the names of the files in a directory, none if the directory doesn't exist yet.
+   */
+  private static CompletableFuture<Set<String>> listNames(
+      HdfsStorage storage,
+      String directory
+  ) {
+    return storage.listAsync(directory).handle((statuses, e) -> {
+      if (e == null) {
+        Set<String> names = new HashSet<>();
+        for (FileStatus status : statuses) {
+          names.add(status.getPath().getName());
+        }
+        return names;
+      }
+      Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+      if (cause instanceof ConnectException
+          && cause.getCause() instanceof FileNotFoundException) {
+        return Collections.<String>emptySet();
+      }
+      throw cause instanceof RuntimeException
+            ? (RuntimeException) cause
+            : new ConnectException(cause);
+    });
+  }
+
+  /**
+   * Commit the temp files of a checkpoint up to their durable lengths. They are truncated first,
+   * then recorded in a regular BEGIN-END block and renamed, so that this can be repeated after a
+   * failure and the latest offset is extracted as usual. If any of the temp files is gone, can't
+   * be truncated or isn't closed within {@link #CHECKPOINT_CLOSE_TIMEOUT_MS}, none are committed
+   * and their records are written again.
+   *
+   * <p>Recovering the lease of a temp file and truncating it may leave the file open until the
+   * file system recovers its last block. Then this returns false and is called again later, which
+   * repeats the calls that are done already cheaply. </p>
+   *
+   * @param checkpoints the checkpointed temp files
+   * @return false if a temp file isn't closed yet, true once the checkpoint is committed or
+   *     given up on
+   * @throws IOException when the WAL writer is unable to append the entries
+   */
+  private boolean commitCheckpointedFiles(Collection<Checkpoint> checkpoints) throws IOException {
+    Map<WALEntry, WALEntry> entries = new HashMap<>();
+    try {
+      for (Checkpoint checkpoint : checkpoints) {
+        if (!storage.exists(checkpoint.tempFile)) {
+          log.warn(
+              "Not recovering checkpoint in WAL file {}, temp file {} no longer exists",
+              logFile,
+              checkpoint.tempFile
+          );
+          return true;
+        }
+      }
+      for (Checkpoint checkpoint : checkpoints) {
+        log.info(
+            "Recovering first {} bytes of temp file {} as {}",
+            checkpoint.length,
+            checkpoint.tempFile,
+            checkpoint.committedFile
+        );
+        // A file that's still truncated is under recovery, which recoverLease reports as well
+        if (!storage.recoverLease(checkpoint.tempFile)
+            || !storage.truncate(checkpoint.tempFile, checkpoint.length)) {
+          return !awaitingClose(checkpoint.tempFile);
+        }
+        entries.put(new WALEntry(checkpoint.tempFile), new WALEntry(checkpoint.committedFile));
       }
+    } catch (RuntimeException e) {
+      log.warn("Not recovering checkpoint in WAL file {}: {}", logFile, e.getMessage());
+      return true;
+    }
+
+    writer.append(new WALEntry(beginMarker), new WALEntry(""));
+    for (Map.Entry<WALEntry, WALEntry> entry : entries.entrySet()) {
+      writer.append(entry.getKey(), entry.getValue());
+    }
+    writer.append(new WALEntry(endMarker), new WALEntry(""));
+    sync();
+    commitEntriesToStorage(entries);
+    // The reader was opened before the block was appended and might not see it
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+    return true;
+  }
+
+  /**
+   * @return true if recovery should be retried until the temp file is closed, false if it took
+   *     too long already and the checkpoint is given up on
+   */
+  private boolean awaitingClose(String tempFile) {
+    long waitedMs = time.milliseconds() - pendingCheckpointsSinceMs;
+    if (waitedMs >= CHECKPOINT_CLOSE_TIMEOUT_MS) {
+      log.warn(
+          "Not recovering checkpoint in WAL file {}, temp file {} not closed after {}ms",
+          logFile,
+          tempFile,
+          waitedMs
+      );
+      return false;
     }
+    log.info("Waiting for temp file {} to be closed for {}ms, will retry", tempFile, waitedMs);
+    return true;
   }
 
   /**
@@ -217,9 +548,6 @@ public class FSWAL implements WAL {
         log.trace("Restoring offset from WAL file: {}", logFile);
         if (reader == null) {
           reader = newWalFileReader(logFile);
-        } else {
-          // reset read position after apply()
-          reader.seekToFirstRecord();
         }
         List<String> committedFileBatch = getLastFilledBlockFromWAL(reader);
         // At this point the committedFilenames list will contain the
@@ -228,7 +556,7 @@ public class FSWAL implements WAL {
       }
 
       // attempt to use old log file if recent WAL is empty or non-existent
-      if (latestOffset == null && storage.exists(oldWALFile)) {
+      if (latestOffset == null && renamedOnTruncate && storage.exists(oldWALFile)) {
         log.trace("Could not find offset in log file {}. Using {} instead", logFile, oldWALFile);
         try (Reader oldFileReader = newWalFileReader(oldWALFile)) {
           List<String> committedFileBatch = getLastFilledBlockFromWAL(oldFileReader);
@@ -250,12 +578,40 @@ public class FSWAL implements WAL {
   /**
    * Extract the last filled BEGIN-END block of entries from the WAL.
    *
+   * <p>Only the tail of the WAL is read, starting at the first sync mark of the last
+   * {@link #TAIL_WINDOW_BYTES} bytes. The tail is doubled until it holds a filled block, so the
+   * cost doesn't depend on the size of the WAL but on how far its last filled block is from the
+   * end. Blocks are only taken whose BEGIN marker is in the tail, and every block after them is
+   * in the tail as well, so this finds the same block as reading the whole WAL. </p>
+   *
    * @param reader the WAL file reader
    * @return the last batch of entries, may be empty if the WAL
    *         is empty or only contains empty BEGIN-END blocks
    * @throws IOException error on reading the WAL file
    */
   private List<String> getLastFilledBlockFromWAL(Reader reader) throws IOException {
+    long end = reader.getEnd();
+    for (long window = TAIL_WINDOW_BYTES; ; window *= 2) {
+      long start = Math.max(0, end - window);
+      // Seeks to the first record if the tail includes the header
+      reader.sync(start);
+      List<String> committedFilenames = getLastFilledBlockFromPosition(reader, start == 0);
+      if (!committedFilenames.isEmpty() || start == 0) {
+        return committedFilenames;
+      }
+    }
+  }
+
+  /**
+   * Extract the last filled BEGIN-END block of entries from the current position of the reader.
+   *
+   * @param reader the WAL file reader, positioned at a sync mark or the first record
+   * @param wholeFile whether the reader is positioned at the first record
+   * @return the last batch of entries, may be empty
+   * @throws IOException error on reading the WAL file
+   */
+  private List<String> getLastFilledBlockFromPosition(Reader reader, boolean wholeFile)
+      throws IOException {
     // In a WAL entry the temp filenames (keys) don't contain offset info,
     // so we only need to track the committed filename (values).
     List<String> committedFilenames = Collections.emptyList();
@@ -283,7 +639,8 @@ public class FSWAL implements WAL {
         }
         tempFilenames.clear();
         entryBlockStarted = false;
-      } else {
+      } else if (!keyName.startsWith(CHECKPOINT_PREFIX)
+          && !keyName.equals(CHECKPOINT_END_MARKER)) {
         // file path entry
         if (entryBlockStarted) {
           tempFilenames.add(value.getName());
@@ -291,7 +648,8 @@ public class FSWAL implements WAL {
       }
     }
 
-    if (entryBlockStarted && !tempFilenames.isEmpty()) {
+    if (entryBlockStarted && !tempFilenames.isEmpty()
+        && (wholeFile || !committedFilenames.isEmpty())) {
       // the last filled BEGIN-END block was missing an END,
       // these entries would be skipped by apply() so they
       // shouldn't be used to infer latest offset information
@@ -378,6 +736,7 @@ public class FSWAL implements WAL {
     } finally {
       writer = null;
       reader = null;
+      pendingCheckpoints = null;
     }
   }
 
@@ -385,4 +744,30 @@ public class FSWAL implements WAL {
   public String getLogFile() {
     return logFile;
   }
+
+  /**
+   * The length up to which a temp file can be read, and the file its records up to there would be
+   * committed as.
+   */
+  public static final class Checkpoint {
+    private final String tempFile;
+    private final long length;
+    private final String committedFile;
+
+    public Checkpoint(String tempFile, long length, String committedFile) {
+      this.tempFile = tempFile;
+      this.length = length;
+      this.committedFile = committedFile;
+    }
+
+    private static Checkpoint parse(String key, String committedFile)
+        throws CorruptWalFileException {
+      String[] parts = key.substring(CHECKPOINT_PREFIX.length()).split(":", 2);
+      try {
+        return new Checkpoint(parts[1], Long.parseLong(parts[0]), committedFile);
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new CorruptWalFileException("Invalid checkpoint entry: " + key);
+      }
+    }
+  }
 }
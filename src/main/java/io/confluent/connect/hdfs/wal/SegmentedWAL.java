@@ -0,0 +1,363 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.confluent.common.utils.SystemTime;
+import io.confluent.common.utils.Time;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+import io.confluent.connect.storage.wal.FilePathOffset;
+
+/**
+ * A WAL of one topic partition made of numbered segments, each a WAL file of its own next to the
+ * log file of the topic partition. Blocks are appended to the newest segment, which is rolled
+ * over to a new one once it reaches a size or an age.
+ *
+ * <p>Truncating the WAL doesn't rename it. Instead, the segments before the newest one are
+ * deleted in the background once all the files of their blocks were committed, or once they
+ * were applied on recovery. The newest segment is kept for appending and for the latest offset,
+ * and an APPLIED marker is appended to it instead, so that the next recovery skips its blocks.
+ * Recovering a topic partition neither mutates the namespace nor takes another lease. </p>
+ *
+ * <p>Recovery takes the lease of every segment it applies, and lists the segments again once it
+ * holds them. A task rolls over to a new segment only after creating it and appending an empty
+ * block to the full one, so a task that lost the topic partition can't roll over to a segment
+ * the new owner doesn't know about. </p>
+ *
+ * <p>The WAL the topic partition used before segments were enabled is applied and truncated on
+ * recovery, and used for the latest offset if none of the segments has it. Checkpoints of temp
+ * files are not supported by segmented WALs. </p>
+ */
+public class SegmentedWAL implements WAL {
+  private static final Logger log = LoggerFactory.getLogger(SegmentedWAL.class);
+  static final String SEGMENT_PREFIX = "log-";
+  private static final String SEGMENT_FORMAT = SEGMENT_PREFIX + "%020d";
+
+  private final HdfsStorage storage;
+  private final Time time;
+  private final long segmentBytes;
+  private final long segmentMs;
+  private final FSWAL legacyWal;
+  private final String directory;
+  // The segments by sequence number, listed the first time they're used
+  private TreeMap<Long, Segment> segments;
+  // The segment of each temp file of an appended block whose files weren't committed yet
+  private final Map<String, Long> pendingFiles;
+  private boolean legacyApplied = false;
+
+  public SegmentedWAL(String logsDir, TopicPartition topicPart, HdfsStorage storage) {
+    this(logsDir, topicPart, storage, new SystemTime());
+  }
+
+  SegmentedWAL(String logsDir, TopicPartition topicPart, HdfsStorage storage, Time time) {
+    this.storage = storage;
+    this.time = time;
+    HdfsSinkConnectorConfig conf = storage.conf();
+    segmentBytes = conf.walSegmentBytes();
+    segmentMs = conf.walSegmentMs();
+    legacyWal = new FSWAL(logsDir, topicPart, storage);
+    directory = new Path(legacyWal.getLogFile()).getParent().toString();
+    pendingFiles = new HashMap<>();
+  }
+
+  @Override
+  public synchronized void acquireLease() throws ConnectException {
+    newestSegment().wal.acquireLease();
+  }
+
+  /**
+   * Try once to acquire the lease of every segment, which recovery applies, and of the WAL the
+   * topic partition used before segments were enabled. The segments are listed again once their
+   * leases are held, since another task may have rolled over to a new one in the meantime.
+   */
+  @Override
+  public synchronized boolean tryAcquireLease() throws ConnectException {
+    do {
+      for (Segment segment : segments().values()) {
+        if (!segment.wal.tryAcquireLease()) {
+          return false;
+        }
+      }
+    } while (listNewSegments());
+    return legacyWal.tryAcquireLease();
+  }
+
+  /**
+   * Append an entry to the newest segment. Segments are only rolled over between blocks, so that
+   * a block is never split between two of them.
+   */
+  @Override
+  public synchronized void append(String tempFile, String committedFile) throws ConnectException {
+    newestSegment().wal.append(tempFile, committedFile);
+  }
+
+  @Override
+  public synchronized void appendBlock(Map<String, String> entries) throws ConnectException {
+    Segment segment = newestSegment();
+    if (isFull(segment)) {
+      segment = rollOver(segment);
+    }
+    segment.wal.appendBlock(entries);
+    for (String tempFile : entries.keySet()) {
+      pendingFiles.put(tempFile, segment.sequence);
+    }
+  }
+
+  @Override
+  public synchronized void blockCommitted(Map<String, String> entries) {
+    boolean removed = false;
+    for (String tempFile : entries.keySet()) {
+      removed |= pendingFiles.remove(tempFile) != null;
+    }
+    if (removed) {
+      clean();
+    }
+  }
+
+  @Override
+  public synchronized void apply() throws ConnectException {
+    // Waiting for the leases here would stall the task, recovery is retried instead
+    if (!tryApply()) {
+      throw new ConnectException("Cannot apply WAL " + directory + " yet, will retry.");
+    }
+  }
+
+  /**
+   * Apply the segments once their leases are held, and the WAL the topic partition used before
+   * segments were enabled, whose checkpointed temp files may have to be closed first. Segments
+   * skip the blocks before their last APPLIED marker.
+   *
+   * @return false if the leases aren't held yet or the checkpointed temp files aren't closed
+   */
+  @Override
+  public synchronized boolean tryApply() throws ConnectException {
+    if (!tryAcquireLease()) {
+      return false;
+    }
+    if (!legacyApplied && storage.exists(legacyWal.getLogFile())) {
+      if (!legacyWal.tryApply()) {
+        return false;
+      }
+      legacyApplied = true;
+    }
+    for (Segment segment : segments().values()) {
+      segment.wal.apply();
+    }
+    // Every block appended so far is committed now
+    pendingFiles.clear();
+    return true;
+  }
+
+  /**
+   * Delete the segments whose blocks were all committed, and mark the blocks of the newest
+   * segment applied if they were all committed, so that the next recovery skips them.
+   */
+  @Override
+  public synchronized void truncate() throws ConnectException {
+    if (legacyApplied) {
+      legacyWal.truncate();
+      legacyApplied = false;
+    }
+    clean();
+    if (segments != null && !segments.isEmpty()) {
+      Segment newest = segments.lastEntry().getValue();
+      if (!pendingFiles.containsValue(newest.sequence)) {
+        newest.wal.markApplied();
+      }
+    }
+  }
+
+  /**
+   * Extract the latest offset from the newest segment with a filled block, which is normally the
+   * newest segment itself.
+   */
+  @Override
+  public synchronized FilePathOffset extractLatestOffset() {
+    for (Segment segment : segments().descendingMap().values()) {
+      FilePathOffset latestOffset = segment.wal.extractLatestOffset();
+      if (latestOffset != null) {
+        return latestOffset;
+      }
+    }
+    return legacyWal.extractLatestOffset();
+  }
+
+  @Override
+  public synchronized void close() throws ConnectException {
+    if (segments != null) {
+      for (Segment segment : segments.values()) {
+        segment.wal.close();
+      }
+      // Listed again when used next, other tasks might have appended to them in the meantime
+      segments = null;
+    }
+    pendingFiles.clear();
+    legacyWal.close();
+  }
+
+  /**
+   * @return the log file of the topic partition, whose segments are next to it
+   */
+  @Override
+  public String getLogFile() {
+    return legacyWal.getLogFile();
+  }
+
+  private TreeMap<Long, Segment> segments() {
+    if (segments == null) {
+      segments = new TreeMap<>();
+      listNewSegments();
+      log.debug("Found {} segments of WAL {}", segments.size(), directory);
+    }
+    return segments;
+  }
+
+  /**
+   * Add the segments in the WAL directory that aren't known yet.
+   *
+   * @return true if any segment was added
+   */
+  private boolean listNewSegments() {
+    if (!storage.exists(directory)) {
+      return false;
+    }
+    boolean added = false;
+    for (FileStatus status : storage.list(directory)) {
+      String name = status.getPath().getName();
+      if (!name.startsWith(SEGMENT_PREFIX)) {
+        continue;
+      }
+      try {
+        long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length()));
+        if (!segments.containsKey(sequence)) {
+          segments.put(sequence, newSegment(sequence));
+          added = true;
+        }
+      } catch (NumberFormatException e) {
+        log.warn("Ignoring file {} in WAL directory {}", name, directory);
+      }
+    }
+    return added;
+  }
+
+  private Segment newestSegment() {
+    Map.Entry<Long, Segment> newest = segments().lastEntry();
+    if (newest != null) {
+      return newest.getValue();
+    }
+    Segment segment = newSegment(0);
+    segments.put(segment.sequence, segment);
+    return segment;
+  }
+
+  private Segment newSegment(long sequence) {
+    String logFile = directory + "/" + String.format(SEGMENT_FORMAT, sequence);
+    return new Segment(sequence, new FSWAL(storage, logFile, false), time.milliseconds());
+  }
+
+  private boolean isFull(Segment segment) {
+    if (segmentMs > 0 && time.milliseconds() - segment.openedMs >= segmentMs) {
+      return true;
+    }
+    try {
+      return segment.wal.writer != null && segment.wal.writer.getLength() >= segmentBytes;
+    } catch (IOException e) {
+      throw new DataException("Error getting the length of " + segment.wal.getLogFile(), e);
+    }
+  }
+
+  /**
+   * Roll over to a new segment. The new segment is created first, then an empty block is appended
+   * to the full one, which fails if another task took over its lease. That task lists the
+   * segments again once it holds the lease, so it finds the new segment and has to wait for its
+   * lease as well.
+   */
+  private Segment rollOver(Segment full) {
+    Segment segment = newSegment(full.sequence + 1);
+    segment.wal.acquireLease();
+    try {
+      full.wal.appendBlock(Collections.emptyMap());
+    } catch (ConnectException e) {
+      // The new segment stays empty, which is harmless
+      segment.wal.close();
+      throw e;
+    }
+    full.wal.close();
+    segments.put(segment.sequence, segment);
+    log.debug("Rolled WAL {} over to segment {}", directory, segment.wal.getLogFile());
+    clean();
+    return segment;
+  }
+
+  /**
+   * Delete the segments before the newest one whose blocks were all committed. The deletes run
+   * in the background, a segment that fails to be deleted is applied again on recovery and
+   * deleted then.
+   */
+  private void clean() {
+    if (segments == null || segments.isEmpty()) {
+      return;
+    }
+    Set<Long> pendingSegments = new HashSet<>(pendingFiles.values());
+    Iterator<Segment> older = segments.headMap(segments.lastKey()).values().iterator();
+    while (older.hasNext()) {
+      Segment segment = older.next();
+      if (pendingSegments.contains(segment.sequence)) {
+        continue;
+      }
+      segment.wal.close();
+      older.remove();
+      String logFile = segment.wal.getLogFile();
+      storage.deleteAsync(logFile).whenComplete((result, e) -> {
+        if (e != null) {
+          log.warn("Could not delete WAL segment {}: {}", logFile, e.getMessage());
+        } else {
+          log.debug("Deleted WAL segment {}", logFile);
+        }
+      });
+    }
+  }
+
+  private static final class Segment {
+    private final long sequence;
+    private final FSWAL wal;
+    // Segments listed on recovery are aged from when they were opened by this task
+    private final long openedMs;
+
+    private Segment(long sequence, FSWAL wal, long openedMs) {
+      this.sequence = sequence;
+      this.wal = wal;
+      this.openedMs = openedMs;
+    }
+  }
+}
@@ -0,0 +1,759 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+import io.confluent.connect.hdfs.wal.WALFile.Reader;
+import io.confluent.connect.hdfs.wal.WALFile.Writer;
+import io.confluent.connect.storage.wal.FilePathOffset;
+
+/**
+ * A WAL shared by all the topic partitions of a task, so that a task holds a single lease and
+ * syncs a single file no matter how many topic partitions it writes. Each entry is tagged with
+ * its topic partition, and {@link #forPartition} gives the {@link WAL} of one topic partition.
+ *
+ * <p>Truncating the WAL of a topic partition appends a TRUNCATE marker for it. Once enough
+ * entries were appended, the log is compacted into a new file holding only the fences, the blocks
+ * whose files may not be committed yet and the last filled block of each topic partition, which
+ * its latest offset is extracted from. </p>
+ *
+ * <p>Topic partitions move between tasks on rebalances, so the logs of the other tasks of the
+ * connector are read again when a topic partition is recovered, and their blocks of the topic
+ * partition are applied like its own. Topic partitions assigned together share a read. Applying
+ * a block again is harmless, since files that were already committed are skipped. </p>
+ *
+ * <p>Instead of a lease per topic partition, a task takes a topic partition over by appending a
+ * FENCE entry for it to its log, with an epoch above the epochs of the fences in the other logs.
+ * It then recovers the leases of the logs of the other tasks with entries of the topic partition,
+ * and reads them once they're closed.
+ * A task that lost its lease reads the other logs before appending again, finds the newer fence
+ * and fails to append blocks of the topic partition from then on, until it's assigned the topic
+ * partition again. So taking a topic partition over costs a sync of the task's log and a lease
+ * recovery, and recovering a topic partition that stayed with the task costs neither. The WALs
+ * of topic partitions written before the task WAL was enabled are applied and truncated on
+ * recovery. </p>
+ */
+public class TaskWAL {
+  private static final Logger log = LoggerFactory.getLogger(TaskWAL.class);
+  // Topic names can't contain '+', so this can't be the log directory of a topic
+  static final String TASKS_DIRECTORY = "+tasks";
+  private static final String LOG_FILE = "log";
+  private static final String COMPACTING_LOG_EXTENSION = ".compacting";
+  private static final String TRUNCATE_MARKER = "TRUNCATE";
+  private static final String FENCE_MARKER = "FENCE";
+
+  private final HdfsSinkConnectorConfig conf;
+  private final HdfsStorage storage;
+  private final String tasksDir;
+  // The directory of this task's log in the tasks directory
+  private final String task;
+  private final String logFile;
+  private final boolean hsync;
+  private final long compactionRecords;
+  // The topic partitions of this task's log, and those of the other tasks' logs by task
+  private final Map<TopicPartition, PartitionLog> partitions;
+  private final Map<String, Map<TopicPartition, PartitionLog>> otherLogs;
+  // Topic partitions this task holds the latest fence of, as of their recovery
+  private final Set<TopicPartition> owned;
+  // Topic partitions another task took over since this task fenced them
+  private final Set<TopicPartition> fenced;
+  // The tasks a fenced topic partition is taken over from, whose logs are closed and read next
+  private final Map<TopicPartition, Set<String>> takeovers;
+
+  // Counts the topic partitions assigned, and the count when the other logs were last read
+  private final AtomicLong recoveries = new AtomicLong();
+  private long recoveriesRead = 0;
+
+  private Writer writer = null;
+  private boolean loaded = false;
+  private long recordsSinceCompaction = 0;
+
+  public TaskWAL(HdfsStorage storage) {
+    this.storage = storage;
+    this.conf = storage.conf();
+    tasksDir = storage.url() + "/" + baseDir(conf.logsDir()) + "/" + TASKS_DIRECTORY + "/"
+        + conf.name();
+    task = String.valueOf(conf.getTaskId());
+    logFile = logFile(task);
+    hsync = conf.walSyncMode().equals(HdfsSinkConnectorConfig.WAL_SYNC_MODE_HSYNC);
+    compactionRecords = conf.walTaskCompactionRecords();
+    partitions = new HashMap<>();
+    otherLogs = new HashMap<>();
+    owned = new HashSet<>();
+    fenced = new HashSet<>();
+    takeovers = new HashMap<>();
+  }
+
+  /**
+   * The part of the logs directory before any topic-dependent part, which all topics share.
+   */
+  static String baseDir(String logsDir) {
+    int index = logsDir.indexOf("${");
+    if (index < 0) {
+      return logsDir;
+    }
+    int separator = logsDir.lastIndexOf('/', index);
+    return separator < 0 ? "" : logsDir.substring(0, separator);
+  }
+
+  /**
+   * @param topicPart the topic partition, which was assigned to this task
+   * @param legacyWal the WAL the topic partition used before the task WAL was enabled
+   * @return the WAL of the topic partition, backed by this task WAL
+   */
+  public synchronized WAL forPartition(TopicPartition topicPart, WAL legacyWal) {
+    // Assigned again, so it may be taken over from the task that fenced it
+    fenced.remove(topicPart);
+    return new PartitionWAL(topicPart, legacyWal);
+  }
+
+  public String getLogFile() {
+    return logFile;
+  }
+
+  private String logFile(String task) {
+    return tasksDir + "/" + task + "/" + LOG_FILE;
+  }
+
+  public synchronized void acquireLease() throws ConnectException {
+    log.debug("Attempting to acquire lease for task WAL file: {}", logFile);
+    long sleepIntervalMs = WALConstants.INITIAL_SLEEP_INTERVAL_MS;
+    while (writer == null && !tryCreateWriter()) {
+      if (sleepIntervalMs >= WALConstants.MAX_SLEEP_INTERVAL_MS) {
+        throw new ConnectException("Cannot acquire lease after timeout, will retry.");
+      }
+      try {
+        Thread.sleep(sleepIntervalMs);
+      } catch (InterruptedException ie) {
+        throw new ConnectException(ie);
+      }
+      sleepIntervalMs = sleepIntervalMs * 2;
+    }
+  }
+
+  /**
+   * Try once to acquire the lease on the task WAL file, if it exists.
+   *
+   * @return false if another task still holds the lease, true otherwise
+   */
+  public synchronized boolean tryAcquireLease() throws ConnectException {
+    return writer != null || !storage.exists(logFile) || tryCreateWriter();
+  }
+
+  /**
+   * Open the task WAL file for appending. Another task may have recovered its lease to take over
+   * a topic partition while it was closed, so once the logs are loaded the fences of the other
+   * logs are checked before appending again.
+   *
+   * @return false if another task holds the lease on the task WAL file
+   */
+  private boolean tryCreateWriter() {
+    try {
+      writer = WALFile.createWriter(conf, Writer.file(new Path(logFile)),
+                                    Writer.appendIfExists(true));
+      log.debug("Successfully acquired lease on task WAL file {}", logFile);
+    } catch (RemoteException e) {
+      if (!e.getClassName().equals(WALConstants.LEASE_EXCEPTION_CLASS_NAME)) {
+        throw new ConnectException(e);
+      }
+      log.warn("Cannot acquire lease on task WAL file {}", logFile);
+      return false;
+    } catch (IOException e) {
+      throw new DataException("Error creating writer for task WAL file " + logFile, e);
+    }
+    if (loaded) {
+      checkFences();
+    }
+    return true;
+  }
+
+  /**
+   * Append tagged entries of a topic partition, which are synced together. If the writer fails,
+   * likely because another task recovered the lease of the log to take a topic partition over,
+   * the log is opened again and the entries are appended once more.
+   *
+   * @param fencing whether the entries fence the topic partition, which they may even if another
+   *     task took it over
+   */
+  private synchronized void append(TopicPartition topicPart, List<String[]> entries,
+      boolean fencing) {
+    load();
+    while (true) {
+      boolean opened = writer == null;
+      acquireLease();
+      if (!fencing && fenced.contains(topicPart)) {
+        throw new ConnectException(
+            "Topic partition " + topicPart + " was taken over by another task"
+        );
+      }
+      try {
+        for (String[] entry : entries) {
+          writer.append(new WALEntry(tag(topicPart, entry[0])), new WALEntry(entry[1]));
+        }
+        if (hsync) {
+          writer.hsync();
+        } else {
+          writer.hflush();
+        }
+        break;
+      } catch (IOException e) {
+        closeWriter();
+        if (opened) {
+          log.error("Error appending task WAL file: {}, {}", logFile, e);
+          throw new DataException(e);
+        }
+        log.warn("Error appending task WAL file {}, opening it again: {}", logFile, e.getMessage());
+      }
+    }
+    PartitionLog partitionLog = partitions.computeIfAbsent(topicPart, tp -> new PartitionLog());
+    for (String[] entry : entries) {
+      partitionLog.add(entry[0], entry[1]);
+    }
+    recordsSinceCompaction += entries.size();
+  }
+
+  private void append(TopicPartition topicPart, List<String[]> entries) {
+    append(topicPart, entries, false);
+  }
+
+  /**
+   * Apply the blocks of a topic partition in this task's log and the other tasks' logs, once it's
+   * fenced from the other tasks. The other logs are read again unless they were read after the
+   * topic partition was assigned, so that topic partitions assigned together share a read.
+   *
+   * @param topicPart the topic partition
+   * @param recovery the count of topic partitions assigned once the topic partition was assigned
+   * @return false if the logs of the tasks the topic partition is taken over from aren't closed
+   *     yet, true once the blocks are applied
+   */
+  private synchronized boolean tryApply(TopicPartition topicPart, long recovery) {
+    load();
+    if (fenced.contains(topicPart)) {
+      throw new ConnectException(
+          "Topic partition " + topicPart + " was taken over by another task, and is only "
+              + "recovered once it's assigned to this task again"
+      );
+    }
+    if (recoveriesRead < recovery) {
+      readOtherLogs();
+    }
+    Set<String> previousOwners = takeovers.get(topicPart);
+    if (previousOwners == null && !task.equals(latestFenceOwner(topicPart))) {
+      previousOwners = previousOwners(topicPart);
+      fence(topicPart);
+      takeovers.put(topicPart, previousOwners);
+    }
+    if (previousOwners != null) {
+      for (String previousOwner : previousOwners) {
+        String otherLogFile = logFile(previousOwner);
+        // A log being compacted isn't appended to, and is read from the compacted file
+        if (storage.exists(otherLogFile) && !storage.recoverLease(otherLogFile)) {
+          log.info(
+              "Waiting for the log of task {} to be closed to take over {}, will retry",
+              previousOwner,
+              topicPart
+          );
+          return false;
+        }
+      }
+      // The previous owners find the fence before appending again, so this read is complete
+      readOtherLogs();
+      takeovers.remove(topicPart);
+      if (!task.equals(latestFenceOwner(topicPart))) {
+        fenced.add(topicPart);
+        throw new ConnectException(
+            "Topic partition " + topicPart + " was taken over by another task while recovering"
+        );
+      }
+    }
+
+    List<Map<String, String>> blocks = new ArrayList<>();
+    for (Map<TopicPartition, PartitionLog> otherPartitions : otherLogs.values()) {
+      PartitionLog otherLog = otherPartitions.get(topicPart);
+      if (otherLog != null) {
+        blocks.addAll(otherLog.blocks);
+      }
+    }
+    PartitionLog partitionLog = partitions.get(topicPart);
+    if (partitionLog != null) {
+      blocks.addAll(partitionLog.blocks);
+    }
+    for (Map<String, String> block : blocks) {
+      FSWAL.commitFiles(storage, block);
+    }
+    owned.add(topicPart);
+    return true;
+  }
+
+  /**
+   * @return the task holding the latest fence of a topic partition, or null if it was never
+   *     fenced
+   */
+  private String latestFenceOwner(TopicPartition topicPart) {
+    PartitionLog partitionLog = partitions.get(topicPart);
+    long latestFence = partitionLog == null ? -1 : partitionLog.fence;
+    String latestOwner = latestFence < 0 ? null : task;
+    for (Map.Entry<String, Map<TopicPartition, PartitionLog>> other : otherLogs.entrySet()) {
+      PartitionLog otherLog = other.getValue().get(topicPart);
+      if (otherLog == null || otherLog.fence < 0) {
+        continue;
+      }
+      // Tasks fencing a topic partition at the same time are ordered by their directories
+      if (otherLog.fence > latestFence
+          || (otherLog.fence == latestFence && other.getKey().compareTo(latestOwner) > 0)) {
+        latestFence = otherLog.fence;
+        latestOwner = other.getKey();
+      }
+    }
+    return latestOwner;
+  }
+
+  /**
+   * @return the tasks a topic partition has to be taken over from, which are the tasks whose
+   *     logs have entries of it, or none if this task holds its latest fence
+   */
+  private Set<String> previousOwners(TopicPartition topicPart) {
+    if (task.equals(latestFenceOwner(topicPart))) {
+      return Collections.emptySet();
+    }
+    Set<String> previousOwners = new HashSet<>();
+    for (Map.Entry<String, Map<TopicPartition, PartitionLog>> other : otherLogs.entrySet()) {
+      if (other.getValue().containsKey(topicPart)) {
+        previousOwners.add(other.getKey());
+      }
+    }
+    return previousOwners;
+  }
+
+  /**
+   * Append a fence of the topic partition with an epoch above those of the fences in all logs.
+   */
+  private void fence(TopicPartition topicPart) {
+    PartitionLog partitionLog = partitions.get(topicPart);
+    long latestFence = partitionLog == null ? -1 : partitionLog.fence;
+    for (Map<TopicPartition, PartitionLog> otherPartitions : otherLogs.values()) {
+      PartitionLog otherLog = otherPartitions.get(topicPart);
+      if (otherLog != null) {
+        latestFence = Math.max(latestFence, otherLog.fence);
+      }
+    }
+    long epoch = latestFence + 1;
+    log.info("Fencing topic partition {} with epoch {} in task WAL file {}", topicPart, epoch,
+        logFile);
+    append(
+        topicPart,
+        Collections.singletonList(new String[] {FENCE_MARKER, String.valueOf(epoch)}),
+        true
+    );
+    fenced.remove(topicPart);
+  }
+
+  /**
+   * Read the other logs and record the topic partitions this task held that another task took
+   * over since.
+   */
+  private void checkFences() {
+    readOtherLogs();
+    for (Iterator<TopicPartition> iterator = owned.iterator(); iterator.hasNext(); ) {
+      TopicPartition topicPart = iterator.next();
+      String latestOwner = latestFenceOwner(topicPart);
+      if (!task.equals(latestOwner)) {
+        log.info("Topic partition {} was taken over by task {}", topicPart, latestOwner);
+        fenced.add(topicPart);
+        iterator.remove();
+      }
+    }
+  }
+
+  private synchronized void blockCommitted(TopicPartition topicPart, Set<String> tempFiles) {
+    PartitionLog partitionLog = partitions.get(topicPart);
+    if (partitionLog == null) {
+      return;
+    }
+    // Temp file names are unique, and blocks are only reported once all their files are committed
+    partitionLog.blocks.removeIf(block -> !Collections.disjoint(block.keySet(), tempFiles));
+    if (recordsSinceCompaction >= compactionRecords) {
+      compact();
+    }
+  }
+
+  private synchronized FilePathOffset extractLatestOffset(TopicPartition topicPart) {
+    load();
+    FilePathOffset latestOffset = latestOffset(partitions.get(topicPart), null);
+    for (Map<TopicPartition, PartitionLog> otherPartitions : otherLogs.values()) {
+      latestOffset = latestOffset(otherPartitions.get(topicPart), latestOffset);
+    }
+    return latestOffset;
+  }
+
+  private static FilePathOffset latestOffset(PartitionLog partitionLog, FilePathOffset latest) {
+    if (partitionLog == null) {
+      return latest;
+    }
+    for (String committedFile : partitionLog.lastFilledBlock.values()) {
+      long offset = FSWAL.extractOffsetsFromFilePath(committedFile);
+      if (offset >= 0 && (latest == null || offset > latest.getOffset())) {
+        latest = new FilePathOffset(offset, committedFile);
+      }
+    }
+    return latest;
+  }
+
+  private synchronized void truncate(TopicPartition topicPart) {
+    load();
+    PartitionLog partitionLog = partitions.get(topicPart);
+    for (Map<TopicPartition, PartitionLog> otherPartitions : otherLogs.values()) {
+      PartitionLog otherLog = otherPartitions.get(topicPart);
+      if (otherLog != null) {
+        otherLog.blocks.clear();
+      }
+    }
+    if (partitionLog == null || partitionLog.blocks.isEmpty()) {
+      // Nothing to truncate, which saves a sync for each topic partition on recovery
+      return;
+    }
+    append(topicPart, Collections.singletonList(new String[] {TRUNCATE_MARKER, ""}));
+    if (recordsSinceCompaction >= compactionRecords) {
+      compact();
+    }
+  }
+
+  /**
+   * Read the logs of this task and the other tasks of the connector, unless already read.
+   */
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    String compactingFile = logFile + COMPACTING_LOG_EXTENSION;
+    if (storage.exists(compactingFile)) {
+      if (storage.exists(logFile)) {
+        // Compaction didn't get to replace the log
+        storage.delete(compactingFile);
+      } else {
+        storage.commit(compactingFile, logFile);
+      }
+    }
+    boolean corrupt = false;
+    if (storage.exists(logFile)) {
+      recordsSinceCompaction = read(logFile, partitions);
+      corrupt = recordsSinceCompaction < 0;
+    }
+    readOtherLogs();
+    loaded = true;
+    if (corrupt) {
+      log.warn("Rewriting corrupt task WAL file {} with the entries that could be read", logFile);
+      compact();
+    }
+  }
+
+  private void readOtherLogs() {
+    recoveriesRead = recoveries.get();
+    otherLogs.clear();
+    if (!storage.exists(tasksDir)) {
+      return;
+    }
+    for (FileStatus status : storage.list(tasksDir)) {
+      String otherTask = status.getPath().getName();
+      if (status.isDirectory() && !otherTask.equals(task)) {
+        readOtherLog(otherTask);
+      }
+    }
+  }
+
+  private void readOtherLog(String otherTask) {
+    String otherLogFile = logFile(otherTask);
+    if (!storage.exists(otherLogFile)) {
+      otherLogFile += COMPACTING_LOG_EXTENSION;
+      if (!storage.exists(otherLogFile)) {
+        return;
+      }
+    }
+    Map<TopicPartition, PartitionLog> logs = new HashMap<>();
+    read(otherLogFile, logs);
+    otherLogs.put(otherTask, logs);
+  }
+
+  /**
+   * Read the entries of a log into the given logs of its topic partitions. A corrupt entry is
+   * taken for the tail of a log whose writer failed, and any other error fails the read, so that
+   * recovery is retried rather than missing blocks.
+   *
+   * @return the number of entries read, or -1 if the log is corrupt, in which case the entries
+   *     before the corruption are read
+   * @throws ConnectException if the log can't be read
+   */
+  private long read(String file, Map<TopicPartition, PartitionLog> logs) {
+    log.debug("Reading task WAL file: {}", file);
+    try (Reader reader = new Reader(conf.getHadoopConfiguration(), Reader.file(new Path(file)))) {
+      WALEntry key = new WALEntry();
+      WALEntry value = new WALEntry();
+      long records = 0;
+      while (reader.next(key, value)) {
+        ++records;
+        String[] parts = key.getName().split(":", 3);
+        try {
+          TopicPartition topicPart = new TopicPartition(parts[0], Integer.parseInt(parts[1]));
+          logs.computeIfAbsent(topicPart, tp -> new PartitionLog())
+              .add(parts[2], value.getName());
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+          throw new CorruptWalFileException("Invalid task WAL entry: " + key.getName());
+        }
+      }
+      return records;
+    } catch (CorruptWalFileException e) {
+      log.error("Task WAL file {} is corrupt, ignoring the rest of it: {}", file, e.getMessage());
+      return -1;
+    } catch (IOException e) {
+      throw new ConnectException("Error reading task WAL file " + file, e);
+    }
+  }
+
+  /**
+   * Replace the log with one holding only the fences, the blocks whose files may not be committed
+   * yet and the last filled block of each topic partition. Topic partitions another task took
+   * over are left out, since that task applies their blocks. The compacted log is written next to
+   * the log first, and replaces it on recovery if the task fails after removing the log.
+   */
+  private void compact() {
+    String compactingFile = logFile + COMPACTING_LOG_EXTENSION;
+    log.info("Compacting task WAL file {}", logFile);
+    closeWriter();
+    long records = 0;
+    try (Writer compacted = WALFile.createWriter(conf, Writer.file(new Path(compactingFile)))) {
+      for (Map.Entry<TopicPartition, PartitionLog> entry : partitions.entrySet()) {
+        TopicPartition topicPart = entry.getKey();
+        PartitionLog partitionLog = entry.getValue();
+        if (fenced.contains(topicPart)) {
+          continue;
+        }
+        if (partitionLog.fence >= 0) {
+          compacted.append(
+              new WALEntry(tag(topicPart, FENCE_MARKER)),
+              new WALEntry(String.valueOf(partitionLog.fence))
+          );
+          ++records;
+        }
+        if (partitionLog.lastFilledBlock.isEmpty()) {
+          continue;
+        }
+        List<Map<String, String>> blocks = partitionLog.blocks.isEmpty()
+            ? Collections.singletonList(partitionLog.lastFilledBlock)
+            : partitionLog.blocks;
+        for (Map<String, String> block : blocks) {
+          records += appendBlock(compacted, topicPart, block);
+        }
+        if (partitionLog.blocks.isEmpty()) {
+          // The last filled block was applied, and is only kept to extract the latest offset from
+          compacted.append(new WALEntry(tag(topicPart, TRUNCATE_MARKER)), new WALEntry(""));
+          ++records;
+        }
+      }
+      compacted.hsync();
+    } catch (IOException e) {
+      log.error("Error compacting task WAL file {}, keeping it: {}", logFile, e);
+      storage.delete(compactingFile);
+      return;
+    }
+    storage.delete(logFile);
+    storage.commit(compactingFile, logFile);
+    recordsSinceCompaction = records;
+  }
+
+  private static long appendBlock(Writer writer, TopicPartition topicPart,
+      Map<String, String> block) throws IOException {
+    writer.append(new WALEntry(tag(topicPart, WAL.beginMarker)), new WALEntry(""));
+    for (Map.Entry<String, String> entry : block.entrySet()) {
+      writer.append(new WALEntry(tag(topicPart, entry.getKey())), new WALEntry(entry.getValue()));
+    }
+    writer.append(new WALEntry(tag(topicPart, WAL.endMarker)), new WALEntry(""));
+    return block.size() + 2;
+  }
+
+  private static String tag(TopicPartition topicPart, String name) {
+    return topicPart.topic() + ":" + topicPart.partition() + ":" + name;
+  }
+
+  private void closeWriter() {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new DataException("Error closing " + logFile, e);
+    } finally {
+      writer = null;
+    }
+  }
+
+  public synchronized void close() throws ConnectException {
+    log.debug("Closing task WAL file: {}", logFile);
+    closeWriter();
+  }
+
+  /**
+   * The entries of a topic partition in a log.
+   */
+  private static final class PartitionLog {
+    // The blocks appended since the WAL of the topic partition was last truncated, whose files
+    // may not be committed yet
+    private final List<Map<String, String>> blocks = new ArrayList<>();
+    private Map<String, String> lastFilledBlock = Collections.emptyMap();
+    private Map<String, String> block = null;
+    // The epoch of the latest fence of the topic partition in the log, or -1 if there's none
+    private long fence = -1;
+
+    private void add(String name, String value) {
+      if (name.equals(WAL.beginMarker)) {
+        block = new LinkedHashMap<>();
+      } else if (name.equals(WAL.endMarker)) {
+        if (block != null && !block.isEmpty()) {
+          blocks.add(block);
+          lastFilledBlock = block;
+        }
+        block = null;
+      } else if (name.equals(TRUNCATE_MARKER)) {
+        blocks.clear();
+        block = null;
+      } else if (name.equals(FENCE_MARKER)) {
+        fence = Long.parseLong(value);
+      } else if (block != null) {
+        block.put(name, value);
+      }
+    }
+  }
+
+  /**
+   * The WAL of one topic partition.
+   */
+  private final class PartitionWAL implements WAL {
+    private final TopicPartition topicPart;
+    private final WAL legacyWal;
+    // Topic partitions assigned together share a read of the other logs on recovery
+    private final long recovery;
+    private boolean legacyApplied = false;
+
+    private PartitionWAL(TopicPartition topicPart, WAL legacyWal) {
+      this.topicPart = topicPart;
+      this.legacyWal = legacyWal;
+      recovery = recoveries.incrementAndGet();
+    }
+
+    @Override
+    public void acquireLease() throws ConnectException {
+      TaskWAL.this.acquireLease();
+    }
+
+    @Override
+    public boolean tryAcquireLease() throws ConnectException {
+      // The WAL the topic partition used before is only locked if it still exists
+      return TaskWAL.this.tryAcquireLease() && legacyWal.tryAcquireLease();
+    }
+
+    @Override
+    public void append(String tempFile, String committedFile) throws ConnectException {
+      TaskWAL.this.append(
+          topicPart,
+          Collections.singletonList(new String[] {tempFile, committedFile})
+      );
+    }
+
+    @Override
+    public void appendBlock(Map<String, String> entries) throws ConnectException {
+      List<String[]> records = new ArrayList<>();
+      records.add(new String[] {beginMarker, ""});
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        records.add(new String[] {entry.getKey(), entry.getValue()});
+      }
+      records.add(new String[] {endMarker, ""});
+      TaskWAL.this.append(topicPart, records);
+    }
+
+    @Override
+    public void blockCommitted(Map<String, String> entries) {
+      TaskWAL.this.blockCommitted(topicPart, entries.keySet());
+    }
+
+    @Override
+    public void apply() throws ConnectException {
+      if (!tryApply()) {
+        throw new ConnectException(
+            "Cannot take over topic partition " + topicPart + " yet, will retry."
+        );
+      }
+    }
+
+    @Override
+    public boolean tryApply() throws ConnectException {
+      // The WAL the topic partition used before the task WAL was enabled is applied as well
+      if (!legacyApplied && storage.exists(legacyWal.getLogFile())) {
+        if (!legacyWal.tryApply()) {
+          return false;
+        }
+        legacyApplied = true;
+      }
+      return TaskWAL.this.tryApply(topicPart, recovery);
+    }
+
+    @Override
+    public void truncate() throws ConnectException {
+      if (legacyApplied) {
+        legacyWal.truncate();
+        legacyApplied = false;
+      }
+      TaskWAL.this.truncate(topicPart);
+    }
+
+    @Override
+    public FilePathOffset extractLatestOffset() {
+      FilePathOffset latestOffset = TaskWAL.this.extractLatestOffset(topicPart);
+      return latestOffset != null ? latestOffset : legacyWal.extractLatestOffset();
+    }
+
+    @Override
+    public void close() throws ConnectException {
+      // The task WAL stays open for the other topic partitions, and is closed with the storage
+      legacyWal.close();
+    }
+
+    @Override
+    public String getLogFile() {
+      return logFile;
+    }
+  }
+}
@@ -15,6 +15,58 @@
 
 package io.confluent.connect.hdfs.wal;
 
+import org.apache.kafka.connect.errors.ConnectException;
+
+import java.util.Map;
+
 @Deprecated
 public interface WAL extends io.confluent.connect.storage.wal.WAL {
+
+  /**
+   * Try once to acquire the lease on the WAL, without waiting for another task to release it. A
+   * WAL that doesn't exist yet has no lease to wait for and isn't created.
+   *
+   * @return false if another task still holds the lease, true otherwise
+   * @throws ConnectException if the lease can't be acquired for any other reason
+   */
+  default boolean tryAcquireLease() throws ConnectException {
+    acquireLease();
+    return true;
+  }
+
+  /**
+   * Apply the WAL, unless it first has to wait for the file system to close files it commits.
+   * Rather than waiting, the caller retries later, like when another task holds the lease.
+   *
+   * @return false if the WAL should be applied again later, true once it's applied
+   * @throws ConnectException if the WAL can't be applied
+   */
+  default boolean tryApply() throws ConnectException {
+    apply();
+    return true;
+  }
+
+  /**
+   * Append a BEGIN-END block of file entries. Since blocks without an END marker are ignored on
+   * recovery, implementations may make the whole block durable at once.
+   *
+   * @param entries the committed file of each temp file
+   * @throws ConnectException if the block can't be appended
+   */
+  default void appendBlock(Map<String, String> entries) throws ConnectException {
+    append(beginMarker, "");
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      append(entry.getKey(), entry.getValue());
+    }
+    append(endMarker, "");
+  }
+
+  /**
+   * Record that the files of a block appended with {@link #appendBlock} were committed, after
+   * which the block is no longer needed for recovery.
+   *
+   * @param entries the committed file of each temp file of the block
+   */
+  default void blockCommitted(Map<String, String> entries) {
+  }
 }
@@ -33,6 +33,7 @@ import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.VersionMismatchException;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.io.serializer.Serializer;
@@ -42,18 +43,31 @@ import org.apache.hadoop.util.Time;
 import org.apache.kafka.connect.errors.ConnectException;
 
 import java.io.Closeable;
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.storage.common.StorageCommonConfig;
 
 public class WALFile {
 
   private static final Log log = LogFactory.getLog(WALFile.class);
   private static final byte INITIAL_VERSION = (byte) 0;
+  // Records hold names relative to the topics and logs directories, with the directories of names
+  // defined once per sync interval, and END markers hold the checksum of their block
+  static final byte COMPACT_VERSION = (byte) 1;
   private static final int SYNC_ESCAPE = -1;      // "length" of sync entries
   private static final int SYNC_HASH_SIZE = 16;   // number of bytes in hash
   private static final int SYNC_SIZE = 4 + SYNC_HASH_SIZE; // escape + hash
@@ -62,7 +76,7 @@ public class WALFile {
    */
   public static final int SYNC_INTERVAL = 100 * SYNC_SIZE;
   private static byte[] VERSION = new byte[]{
-      (byte) 'W', (byte) 'A', (byte) 'L', INITIAL_VERSION
+      (byte) 'W', (byte) 'A', (byte) 'L', COMPACT_VERSION
   };
 
   private static String deserErrorFmt = "Could not find a deserializer for the %s class: '%s'. "
@@ -85,6 +99,18 @@ public class WALFile {
     return conf.getInt("io.file.buffer.size", 4096);
   }
 
+  private static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    WritableUtils.writeVInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[WritableUtils.readVInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
   public static class Writer implements Closeable, Syncable {
     protected Serializer<WALEntry> keySerializer;
     protected Serializer<WALEntry> valSerializer;
@@ -98,6 +124,13 @@ public class WALFile {
     private FSDataOutputStream out;
     private DataOutputBuffer buffer = new DataOutputBuffer();
     private boolean appendMode;
+    private byte version = INITIAL_VERSION;
+    // Names starting with one of these directories are written relative to the longest of them
+    private List<String> bases = Collections.emptyList();
+    // The ids of the directories defined since the last sync mark
+    private final Map<String, Integer> directories = new HashMap<>();
+    private final CRC32 blockChecksum = new CRC32();
+    private boolean blockStarted = false;
 
     {
       try {
@@ -165,9 +198,12 @@ public class WALFile {
                 WALFile.Reader.file(p),
                 new Reader.OnlyHeaderOption()
             )) {
-              if (reader.getVersion() != VERSION[3]) {
+              if (reader.getVersion() > VERSION[3]) {
                 throw new VersionMismatchException(VERSION[3], reader.getVersion());
               }
+              // Files of older versions are appended to in their version
+              version = reader.getVersion();
+              bases = reader.getBases();
               sync = reader.getSync();
             }
             out = fs.append(p, bufferSize);
@@ -178,6 +214,10 @@ public class WALFile {
         } else {
           out = streamOption.getValue();
         }
+        if (!appendMode) {
+          version = (byte) connectorConfig.walFormatVersion();
+          bases = bases(connectorConfig);
+        }
 
         init(connectorConfig, out, ownStream);
       } catch (Exception re) {
@@ -194,6 +234,25 @@ public class WALFile {
       }
     }
     
+    /**
+     * The directories names are written relative to, which are the parts of the topics and logs
+     * directories all topics share, and the store URL.
+     */
+    private static List<String> bases(HdfsSinkConnectorConfig conf) {
+      List<String> bases = new ArrayList<>();
+      for (String dir : Arrays.asList(
+          TaskWAL.baseDir(conf.getString(StorageCommonConfig.TOPICS_DIR_CONFIG)),
+          TaskWAL.baseDir(conf.logsDir()),
+          ""
+      )) {
+        String base = conf.url() + "/" + (dir.isEmpty() ? "" : dir + "/");
+        if (!bases.contains(base)) {
+          bases.add(base);
+        }
+      }
+      return bases;
+    }
+
     private boolean hasIntactVersionHeader(Path p, FileSystem fs) throws IOException {
       FileStatus[] statuses = fs.listStatus(p);
       if (statuses.length != 1) {
@@ -267,6 +326,10 @@ public class WALFile {
 
     public synchronized void append(WALEntry key, WALEntry val)
         throws IOException {
+      if (version >= COMPACT_VERSION) {
+        appendCompact(key, val);
+        return;
+      }
       buffer.reset();
 
       // Append the 'key'
@@ -285,6 +348,69 @@ public class WALFile {
       out.write(buffer.getData(), 0, buffer.getLength()); // data
     }
 
+    private void appendCompact(WALEntry key, WALEntry val) throws IOException {
+      // A sync mark resets the directories, so it's written before the record is encoded
+      checkAndWriteSync();
+      buffer.reset();
+      writeName(key.getName());
+      int keyLength = buffer.getLength();
+      writeName(val.getName());
+      if (key.getName().equals(WAL.endMarker)) {
+        // Blocks started by an earlier writer of the file have no checksum
+        buffer.writeBoolean(blockStarted);
+        if (blockStarted) {
+          buffer.writeInt((int) blockChecksum.getValue());
+        }
+        blockStarted = false;
+      } else {
+        if (key.getName().equals(WAL.beginMarker)) {
+          blockChecksum.reset();
+          blockStarted = true;
+        }
+        blockChecksum.update(buffer.getData(), 0, buffer.getLength());
+      }
+
+      out.writeInt(buffer.getLength());                   // total record length
+      out.writeInt(keyLength);                            // key portion length
+      out.write(buffer.getData(), 0, buffer.getLength()); // data
+    }
+
+    /**
+     * Write a name as the id of its directory and its file name. A directory is written in full
+     * the first time it's used after a sync mark, relative to the longest base it starts with.
+     */
+    private void writeName(String name) throws IOException {
+      int separator = name.lastIndexOf('/');
+      if (separator < 0) {
+        WritableUtils.writeVInt(buffer, 0);
+        writeString(buffer, name);
+        return;
+      }
+      String directory = name.substring(0, separator + 1);
+      Integer id = directories.get(directory);
+      if (id != null) {
+        WritableUtils.writeVInt(buffer, id + 1);
+      } else {
+        id = directories.size();
+        directories.put(directory, id);
+        WritableUtils.writeVInt(buffer, -id - 1);
+        // The id of the longest base the directory starts with, or 0 if it starts with none
+        int baseId = 0;
+        for (int i = 0; i < bases.size(); ++i) {
+          if (directory.startsWith(bases.get(i))
+              && (baseId == 0 || bases.get(i).length() > bases.get(baseId - 1).length())) {
+            baseId = i + 1;
+          }
+        }
+        WritableUtils.writeVInt(buffer, baseId);
+        writeString(
+            buffer,
+            baseId == 0 ? directory : directory.substring(bases.get(baseId - 1).length())
+        );
+      }
+      writeString(buffer, name.substring(separator + 1));
+    }
+
     /**
      * Returns the current length of the output file.
      *
@@ -310,8 +436,15 @@ public class WALFile {
 
     private void writeFileHeader()
         throws IOException {
-      out.write(VERSION);                    // write the version
+      out.write(VERSION, 0, VERSION.length - 1);
+      out.write(version);                    // write the version
       out.write(sync);                       // write the sync bytes
+      if (version >= COMPACT_VERSION) {
+        WritableUtils.writeVInt(out, bases.size());
+        for (String base : bases) {
+          writeString(out, base);            // write the bases of relative names
+        }
+      }
       out.flush();                           // flush header
     }
 
@@ -348,6 +481,7 @@ public class WALFile {
         out.writeInt(SYNC_ESCAPE);                // mark the start of the sync
         out.write(sync);                          // write sync
         lastSyncPos = out.getPos();               // update lastSyncPos
+        directories.clear();                      // readers may start reading here
       }
     }
 
@@ -430,6 +564,12 @@ public class WALFile {
 
     private long headerEnd;
     private long end;
+    private final List<String> bases = new ArrayList<>();
+    // The directories defined since the last sync mark, by id
+    private final List<String> directories = new ArrayList<>();
+    private final CRC32 blockChecksum = new CRC32();
+    private boolean blockStarted = false;
+    private String currentValue;
     private int keyLength;
     private int recordLength;
 
@@ -616,6 +756,12 @@ public class WALFile {
       }
 
       in.readFully(sync);                       // read sync bytes
+      if (version >= COMPACT_VERSION) {
+        int count = WritableUtils.readVInt(in);
+        for (int i = 0; i < count; ++i) {
+          bases.add(readString(in));            // read the bases of relative names
+        }
+      }
       headerEnd = in.getPos();                  // record end of header
 
       // Initialize... *not* if this we are constructing a temporary Reader
@@ -686,6 +832,10 @@ public class WALFile {
       }
     }
 
+    private List<String> getBases() {
+      return bases;
+    }
+
     private byte getVersion() {
       return version;
     }
@@ -712,6 +862,10 @@ public class WALFile {
      */
     public synchronized void getCurrentValue(Writable val)
         throws IOException {
+      if (version >= COMPACT_VERSION) {
+        ((WALEntry) val).setName(currentValue);
+        return;
+      }
       if (val instanceof Configurable) {
         ((Configurable) val).setConf(this.conf);
       }
@@ -740,6 +894,11 @@ public class WALFile {
      */
     public synchronized WALEntry getCurrentValue(WALEntry val)
         throws IOException {
+      if (version >= COMPACT_VERSION) {
+        val = val == null ? new WALEntry() : val;
+        val.setName(currentValue);
+        return val;
+      }
       if (val instanceof Configurable) {
         ((Configurable) val).setConf(this.conf);
       }
@@ -784,6 +943,7 @@ public class WALFile {
           throw new CorruptWalFileException("File is corrupt!");
         }
         syncSeen = true;
+        directories.clear();
         if (in.getPos() >= end) {
           return -1;
         }
@@ -818,6 +978,10 @@ public class WALFile {
 
       valBuffer.reset(outBuf.getData(), outBuf.getLength());
 
+      if (version >= COMPACT_VERSION) {
+        decodeRecord((WALEntry) key);
+        return true;
+      }
       key.readFields(valBuffer);
       valBuffer.mark(0);
       if (valBuffer.getPosition() != keyLength) {
@@ -885,6 +1049,11 @@ public class WALFile {
         return null;
       }
       valBuffer.reset(outBuf.getData(), outBuf.getLength());
+      if (version >= COMPACT_VERSION) {
+        key = key == null ? new WALEntry() : key;
+        decodeRecord(key);
+        return key;
+      }
       key = deserializeKey(key);
       valBuffer.mark(0);
       if (valBuffer.getPosition() != keyLength) {
@@ -898,6 +1067,69 @@ public class WALFile {
       return keyDeserializer.deserialize(key);
     }
 
+    /**
+     * Decode the record in the value buffer, whose value is returned by the next call to
+     * getCurrentValue. The names are decoded straight from the buffer, which is reused.
+     */
+    private void decodeRecord(WALEntry key) throws IOException {
+      String keyName = readName();
+      currentValue = readName();
+      int length = valBuffer.getPosition();
+      if (keyName.equals(WAL.endMarker)) {
+        // Blocks read from their BEGIN marker are checked, if their writer started them
+        if (valBuffer.readBoolean()) {
+          int checksum = valBuffer.readInt();
+          if (blockStarted && checksum != (int) blockChecksum.getValue()) {
+            throw new CorruptWalFileException(
+                "Checksum mismatch in block ending before " + getPosition() + " of " + filename
+            );
+          }
+        }
+        blockStarted = false;
+      } else {
+        if (keyName.equals(WAL.beginMarker)) {
+          blockChecksum.reset();
+          blockStarted = true;
+        }
+        blockChecksum.update(valBuffer.getData(), 0, length);
+      }
+      key.setName(keyName);
+    }
+
+    private String readName() throws IOException {
+      int code = WritableUtils.readVInt(valBuffer);
+      if (code == 0) {
+        return readBufferedString();
+      }
+      String directory;
+      if (code > 0) {
+        if (code > directories.size()) {
+          throw new CorruptWalFileException("Unknown directory " + code + " in " + filename);
+        }
+        directory = directories.get(code - 1);
+      } else {
+        int baseId = WritableUtils.readVInt(valBuffer);
+        if (baseId < 0 || baseId > bases.size()) {
+          throw new CorruptWalFileException("Unknown base " + baseId + " in " + filename);
+        }
+        directory = readBufferedString();
+        directory = baseId == 0 ? directory : bases.get(baseId - 1) + directory;
+        directories.add(directory);
+      }
+      return directory + readBufferedString();
+    }
+
+    private String readBufferedString() throws IOException {
+      int length = WritableUtils.readVInt(valBuffer);
+      int position = valBuffer.getPosition();
+      if (length < 0 || position + length > valBuffer.getLength()) {
+        throw new CorruptWalFileException("Invalid string length " + length + " in " + filename);
+      }
+      String value = new String(valBuffer.getData(), position, length, StandardCharsets.UTF_8);
+      valBuffer.skipBytes(length);
+      return value;
+    }
+
     private void handleChecksumException(ChecksumException e)
         throws IOException {
       if (this.conf.getBoolean("io.skip.checksum.errors", false)) {
@@ -921,12 +1153,17 @@ public class WALFile {
      * <p>The position passed must be a position returned by {@link WALFile.Writer#getLength()} when
      * writing this file.  To seek to an arbitrary position, use {@link WALFile.Reader#sync(long)}.
      *
+     * <p>Records of compact files may refer to directories defined earlier in the same sync
+     * interval, so the position should be that of a sync mark or the first record.
+     *
      * @param position a position returned by {@link WALFile.Writer#getLength()} whem
      *                 writing this file.
      * @throws IOException Exception on setting byte position
      */
     public synchronized void seek(long position) throws IOException {
       in.seek(position);
+      directories.clear();
+      blockStarted = false;
     }
 
     /**
@@ -935,7 +1172,7 @@ public class WALFile {
      * @throws IOException if unable to seek to the end of the header
      */
     public void seekToFirstRecord() throws IOException {
-      in.seek(headerEnd);
+      seek(headerEnd);
     }
 
     /**
@@ -952,7 +1189,7 @@ public class WALFile {
 
       if (position < headerEnd) {
         // seek directly to first record
-        in.seek(headerEnd);
+        seek(headerEnd);
         // note the sync marker "seen" in the header
         syncSeen = true;
         return;
@@ -980,6 +1217,14 @@ public class WALFile {
       }
     }
 
+    /**
+     * Return the byte position of the end of the input file, as of when it was opened.
+     * @return the byte position of the end of the input file.
+     */
+    public synchronized long getEnd() {
+      return end;
+    }
+
     /**
      * Returns true iff the previous call to next passed a sync mark.
      * @return true iff the previous call to next passed a sync mark.
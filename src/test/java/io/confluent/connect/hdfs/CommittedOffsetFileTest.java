@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.connect.data.Schema;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommittedOffsetFileTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testRecordsLatestCommittedFileAndSchema() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    CommittedOffsetFile file = new CommittedOffsetFile(storage, avroData, logsDir, TOPIC_PARTITION);
+    assertNull(file.read());
+
+    Schema schema = createSchema();
+    String first = createCommittedFile(0, 2);
+    file.update(2, first, schema);
+    String second = createCommittedFile(3, 5);
+    file.update(5, second, null);
+    // Commits that finish out of order don't move the file back
+    file.update(4, first, schema);
+
+    CommittedOffsetFile.Entry entry = file.read();
+    assertEquals(new Path(second), entry.committedFile());
+    assertTrue(entry.hasSchema());
+    assertNull(entry.schema());
+
+    String third = createCommittedFile(6, 8);
+    file.update(8, third, schema);
+    entry = new CommittedOffsetFile(storage, avroData, logsDir, TOPIC_PARTITION).read();
+    assertEquals(new Path(third), entry.committedFile());
+    assertEquals(schema, entry.schema());
+
+    // A file naming a committed file that's gone is ignored
+    fs.delete(new Path(third), false);
+    assertNull(file.read());
+    storage.close();
+  }
+
+  @Test
+  public void testIgnoresFileOutdatedByLaterCommittedFile() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    CommittedOffsetFile file = new CommittedOffsetFile(storage, avroData, logsDir, TOPIC_PARTITION);
+    file.update(2, createCommittedFile(0, 2), null);
+    // A later commit whose update of the file was lost
+    createCommittedFile(3, 5);
+    assertNull(file.read());
+    storage.close();
+  }
+
+  @Test
+  public void testFailedUpdateRemovesFile() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    CommittedOffsetFile file = new CommittedOffsetFile(storage, avroData, logsDir, TOPIC_PARTITION);
+    String filename = FileUtils.fileName(url, logsDir, TOPIC_PARTITION, "committed");
+    file.update(2, createCommittedFile(0, 2), null);
+    assertTrue(fs.exists(new Path(filename)));
+
+    // The temp file can't be created where a directory is
+    fs.mkdirs(new Path(filename + ".tmp"));
+    file.update(5, createCommittedFile(3, 5), null);
+    assertFalse(fs.exists(new Path(filename)));
+    assertNull(file.read());
+
+    fs.delete(new Path(filename + ".tmp"), true);
+    String third = createCommittedFile(6, 8);
+    file.update(8, third, null);
+    assertEquals(new Path(third), file.read().committedFile());
+    storage.close();
+  }
+
+  @Test
+  public void testReadsFileWithoutSchema() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String committedFile = createCommittedFile(0, 2);
+    String filename = FileUtils.fileName(url, logsDir, TOPIC_PARTITION, "committed");
+    try (FSDataOutputStream out = fs.create(new Path(filename))) {
+      out.write(committedFile.getBytes(StandardCharsets.UTF_8));
+    }
+
+    CommittedOffsetFile.Entry entry =
+        new CommittedOffsetFile(storage, avroData, logsDir, TOPIC_PARTITION).read();
+    assertEquals(new Path(committedFile), entry.committedFile());
+    assertFalse(entry.hasSchema());
+    storage.close();
+  }
+
+  private String createCommittedFile(long startOffset, long endOffset) throws Exception {
+    String committedFile = FileUtils.committedFileName(url, topicsDir.get(TOPIC),
+        TOPIC + "/partition=" + PARTITION, TOPIC_PARTITION, startOffset, endOffset, ".avro",
+        zeroPadFormat);
+    fs.create(new Path(committedFile)).close();
+    return committedFile;
+  }
+}
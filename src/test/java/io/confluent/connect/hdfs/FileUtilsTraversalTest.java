@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+import io.confluent.connect.hdfs.filter.TopicPartitionCommittedFileFilter;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileUtilsTraversalTest extends TestWithMiniDFSCluster {
+  private static final String[] LEAF_DIRECTORIES = {
+      "year=2020/month=01/day=01/hour=00",
+      "year=2020/month=01/day=01/hour=01",
+      "year=2020/month=01/day=02/hour=00",
+      "year=2020/month=02/day=01/hour=00",
+  };
+
+  @Test
+  public void testTraversalIsIndependentOfConcurrency() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path topicDir = new Path(FileUtils.topicDirectory(url, topicsDir.get(TOPIC), TOPIC));
+    List<Path> expectedFiles = new ArrayList<>();
+    long offset = 0;
+    for (String directory : LEAF_DIRECTORIES) {
+      for (int i = 0; i < 3; ++i, offset += 10) {
+        Path file = new Path(FileUtils.committedFileName(url, topicsDir.get(TOPIC),
+            TOPIC + "/" + directory, TOPIC_PARTITION, offset, offset + 9, ".avro", zeroPadFormat));
+        fs.create(file).close();
+        expectedFiles.add(file);
+      }
+    }
+    // Leaf directories without files are found as well
+    fs.mkdirs(new Path(topicDir, "year=2021"));
+
+    for (int maxConcurrency : Arrays.asList(1, 4)) {
+      FileStatus[] files =
+          FileUtils.traverse(storage, topicDir, new CommittedFileFilter(), maxConcurrency);
+      assertEquals(expectedFiles.size(), files.length);
+      for (int i = 0; i < files.length; ++i) {
+        assertEquals(fs.makeQualified(expectedFiles.get(i)), files[i].getPath());
+      }
+
+      FileStatus latest = FileUtils.fileStatusWithMaxOffset(
+          storage,
+          topicDir,
+          new TopicPartitionCommittedFileFilter(TOPIC_PARTITION),
+          maxConcurrency
+      );
+      assertEquals(files[files.length - 1].getPath(), latest.getPath());
+
+      FileStatus[] directories = FileUtils.getDirectories(storage, topicDir, maxConcurrency);
+      List<Path> expectedDirectories = new ArrayList<>();
+      for (String directory : LEAF_DIRECTORIES) {
+        expectedDirectories.add(fs.makeQualified(new Path(topicDir, directory)));
+      }
+      expectedDirectories.add(fs.makeQualified(new Path(topicDir, "year=2021")));
+      List<Path> actualDirectories = new ArrayList<>();
+      for (FileStatus directory : directories) {
+        actualDirectories.add(directory.getPath());
+      }
+      assertArrayEquals(expectedDirectories.toArray(), actualDirectories.toArray());
+    }
+    storage.close();
+  }
+
+  @Test
+  public void testNewestFirstSearchStopsAtNewestDirectoryWithFiles() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path topicDir = new Path(FileUtils.topicDirectory(url, topicsDir.get(TOPIC), TOPIC));
+    TopicPartition otherPartition = new TopicPartition(TOPIC, PARTITION + 1);
+    // Offsets that go back in time are not found, since older directories aren't listed
+    Path stale = createFile(LEAF_DIRECTORIES[0], TOPIC_PARTITION, 1000);
+    createFile(LEAF_DIRECTORIES[1], TOPIC_PARTITION, 10);
+    Path latest = createFile(LEAF_DIRECTORIES[2], TOPIC_PARTITION, 20);
+    createFile(LEAF_DIRECTORIES[3], otherPartition, 30);
+
+    FileStatus newest = FileUtils.fileStatusWithMaxOffsetNewestFirst(
+        storage,
+        topicDir,
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    );
+    assertEquals(latest, newest.getPath());
+    FileStatus scanned = FileUtils.fileStatusWithMaxOffset(
+        storage,
+        topicDir,
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    );
+    assertEquals(stale, scanned.getPath());
+    assertNull(FileUtils.fileStatusWithMaxOffsetNewestFirst(
+        storage,
+        topicDir,
+        new TopicPartitionCommittedFileFilter(new TopicPartition(TOPIC, PARTITION + 2))
+    ));
+    storage.close();
+  }
+
+  @Test
+  public void testNewestFirstSearchComparesNumbersByValue() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path topicDir = new Path(FileUtils.topicDirectory(url, topicsDir.get(TOPIC), TOPIC));
+    createFile("year=2020/month=9", TOPIC_PARTITION, 10);
+    Path latest = createFile("year=2020/month=10", TOPIC_PARTITION, 20);
+
+    FileStatus newest = FileUtils.fileStatusWithMaxOffsetNewestFirst(
+        storage,
+        topicDir,
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    );
+    assertEquals(latest, newest.getPath());
+
+    assertTrue(FileUtils.compareDirectoryNames("month=9", "month=10") < 0);
+    assertTrue(FileUtils.compareDirectoryNames("month=09", "month=10") < 0);
+    assertTrue(FileUtils.compareDirectoryNames("2020", "2021") < 0);
+    assertTrue(FileUtils.compareDirectoryNames("day=2", "hour=1") < 0);
+    assertEquals(0, FileUtils.compareDirectoryNames("month=10", "month=10"));
+    storage.close();
+  }
+
+  @Test
+  public void testMissingDirectory() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path missing = new Path(url + "/missing");
+    assertNull(FileUtils.fileStatusWithMaxOffset(storage, missing, new CommittedFileFilter(), 4));
+    assertEquals(0, FileUtils.traverse(storage, missing, new CommittedFileFilter(), 4).length);
+    assertNull(FileUtils.fileStatusWithMaxOffsetNewestFirst(
+        storage,
+        missing,
+        new CommittedFileFilter()
+    ));
+    storage.close();
+  }
+
+  private Path createFile(String directory, TopicPartition tp, long endOffset) throws Exception {
+    Path file = new Path(FileUtils.committedFileName(url, topicsDir.get(TOPIC),
+        TOPIC + "/" + directory, tp, endOffset - 9, endOffset, ".avro", zeroPadFormat));
+    fs.create(file).close();
+    return file;
+  }
+}
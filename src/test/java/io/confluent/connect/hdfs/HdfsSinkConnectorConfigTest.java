@@ -190,6 +190,29 @@ public class HdfsSinkConnectorConfigTest extends TestWithMiniDFSCluster {
     connectorConfig = new HdfsSinkConnectorConfig(properties);
   }
 
+  @Test(expected = ConfigException.class)
+  public void testRotateSizeBytesMustNotBeNegative() {
+    properties.put(HdfsSinkConnectorConfig.ROTATE_SIZE_BYTES_CONFIG, "-2");
+    connectorConfig = new HdfsSinkConnectorConfig(properties);
+  }
+
+  @Test
+  public void testWriterLimitsMustNotBeNegative() {
+    for (String config : Arrays.asList(
+        HdfsSinkConnectorConfig.PARTITION_BUFFER_MAX_RECORDS_CONFIG,
+        HdfsSinkConnectorConfig.PARTITION_BUFFER_MAX_BYTES_CONFIG,
+        HdfsSinkConnectorConfig.MAX_OPEN_WRITERS_CONFIG,
+        HdfsSinkConnectorConfig.WRITER_MEMORY_BUDGET_BYTES_CONFIG,
+        HdfsSinkConnectorConfig.TEMP_FILE_CHECKPOINT_INTERVAL_RECORDS_CONFIG
+    )) {
+      Map<String, String> props = new HashMap<>(properties);
+      props.put(config, "-1");
+      new HdfsSinkConnectorConfig(props);
+      props.put(config, "-2");
+      assertThrows(ConfigException.class, () -> new HdfsSinkConnectorConfig(props));
+    }
+  }
+
   @Test
   public void testStorageCommonUrlPreferred() {
     connectorConfig = new HdfsSinkConnectorConfig(properties);
@@ -0,0 +1,36 @@
+package io.confluent.connect.hdfs;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class HdfsSinkTaskMetricsTest {
+
+  @Test
+  public void testRegistersGaugesInJmx() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(
+        "kafka.connect.hdfs:type=hdfs-sink-task-metrics,connector=metrics-test,task=3"
+    );
+    AtomicInteger value = new AtomicInteger(1);
+    HdfsSinkTaskMetrics metrics = new HdfsSinkTaskMetrics("metrics-test", 3);
+    metrics.addGauge("open-writers", "The number of open writers", value::get);
+
+    assertEquals(1, server.getAttribute(name, "open-writers"));
+    value.set(2);
+    assertEquals(2, server.getAttribute(name, "open-writers"));
+    assertEquals(2, metrics.value("open-writers"));
+    assertNull(metrics.value("missing"));
+
+    metrics.close();
+    assertFalse(server.isRegistered(name));
+  }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -201,44 +202,27 @@ public class HdfsSinkTaskTest extends TestWithMiniDFSCluster {
   @Test
   public void testSinkTaskStartWithRecovery() throws Exception {
     setUp();
+    createTempFilesAndWALs();
+    HdfsSinkTask task = new HdfsSinkTask();
 
-    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
-    Map<TopicPartition, List<String>> tempfiles = new HashMap<>();
-    List<String> list1 = new ArrayList<>();
-    list1.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY1, extension));
-    list1.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY1, extension));
-    tempfiles.put(TOPIC_PARTITION, list1);
-
-    topicsDir = this.topicsDir.get(TOPIC_PARTITION2.topic());
-    List<String> list2 = new ArrayList<>();
-    list2.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY2, extension));
-    list2.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY2, extension));
-    tempfiles.put(TOPIC_PARTITION2, list2);
-
-    topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
-    Map<TopicPartition, List<String>> committedFiles = new HashMap<>();
-    List<String> list3 = new ArrayList<>();
-    list3.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY1, TOPIC_PARTITION, 100, 200,
-                                          extension, ZERO_PAD_FMT));
-    list3.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY1, TOPIC_PARTITION, 201, 300,
-                                          extension, ZERO_PAD_FMT));
-    committedFiles.put(TOPIC_PARTITION, list3);
+    task.initialize(context);
+    task.start(properties);
 
-    topicsDir = this.topicsDir.get(TOPIC_PARTITION2.topic());
-    List<String> list4 = new ArrayList<>();
-    list4.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY2, TOPIC_PARTITION2, 400, 500,
-                                          extension, ZERO_PAD_FMT));
-    list4.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY2, TOPIC_PARTITION2, 501, 800,
-                                          extension, ZERO_PAD_FMT));
-    committedFiles.put(TOPIC_PARTITION2, list4);
+    Map<TopicPartition, Long> offsets = context.offsets();
+    assertEquals(2, offsets.size());
+    assertTrue(offsets.containsKey(TOPIC_PARTITION));
+    assertEquals(301, (long) offsets.get(TOPIC_PARTITION));
+    assertTrue(offsets.containsKey(TOPIC_PARTITION2));
+    assertEquals(801, (long) offsets.get(TOPIC_PARTITION2));
 
-    for (TopicPartition tp : tempfiles.keySet()) {
-      for (String file : tempfiles.get(tp)) {
-        fs.createNewFile(new Path(file));
-      }
-    }
+    task.stop();
+  }
 
-    createWALs(tempfiles, committedFiles);
+  @Test
+  public void testSinkTaskStartWithConcurrentRecovery() throws Exception {
+    setUp();
+    properties.put(HdfsSinkConnectorConfig.RECOVERY_THREADS_CONFIG, "2");
+    createTempFilesAndWALs();
     HdfsSinkTask task = new HdfsSinkTask();
 
     task.initialize(context);
@@ -298,6 +282,43 @@ public class HdfsSinkTaskTest extends TestWithMiniDFSCluster {
     }
   }
 
+  @Test
+  public void testSinkTaskKeepsTempFilesOfRemainingPartitionsOnClose() throws Exception {
+    setUp();
+    HdfsSinkTask task = new HdfsSinkTask();
+
+    String key = "key";
+    Schema schema = createSchema();
+    Struct record = createRecord(schema);
+    Collection<SinkRecord> sinkRecords = new ArrayList<>();
+    for (TopicPartition tp : context.assignment()) {
+      for (long offset = 0; offset < 2; offset++) {
+        sinkRecords.add(
+            new SinkRecord(tp.topic(), tp.partition(), Schema.STRING_SCHEMA, key, schema, record, offset));
+      }
+    }
+    task.initialize(context);
+    task.start(properties);
+    task.put(sinkRecords);
+
+    // Only the revoked partition is closed, the other one carries on with its temp file
+    task.close(Collections.singleton(TOPIC_PARTITION2));
+    sinkRecords.clear();
+    for (long offset = 2; offset < 4; offset++) {
+      sinkRecords.add(
+          new SinkRecord(TOPIC, PARTITION, Schema.STRING_SCHEMA, key, schema, record, offset));
+    }
+    task.put(sinkRecords);
+    task.close(Collections.singleton(TOPIC_PARTITION));
+    task.stop();
+
+    String topicsDir = this.topicsDir.get(TOPIC);
+    Path path = new Path(FileUtils.committedFileName(url, topicsDir, DIRECTORY1, TOPIC_PARTITION,
+                                                     0, 2, extension, ZERO_PAD_FMT));
+    Collection<Object> records = schemaFileReader.readData(connectorConfig.getHadoopConfiguration(), path);
+    assertEquals(3, records.size());
+  }
+
   @Test
   public void testSinkTaskPutPrimitive() throws Exception {
     setUp();
@@ -357,6 +378,46 @@ public class HdfsSinkTaskTest extends TestWithMiniDFSCluster {
     fs.createNewFile(new Path(file4));
   }
 
+  private void createTempFilesAndWALs() throws Exception {
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    Map<TopicPartition, List<String>> tempfiles = new HashMap<>();
+    List<String> list1 = new ArrayList<>();
+    list1.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY1, extension));
+    list1.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY1, extension));
+    tempfiles.put(TOPIC_PARTITION, list1);
+
+    topicsDir = this.topicsDir.get(TOPIC_PARTITION2.topic());
+    List<String> list2 = new ArrayList<>();
+    list2.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY2, extension));
+    list2.add(FileUtils.tempFileName(url, topicsDir, DIRECTORY2, extension));
+    tempfiles.put(TOPIC_PARTITION2, list2);
+
+    topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    Map<TopicPartition, List<String>> committedFiles = new HashMap<>();
+    List<String> list3 = new ArrayList<>();
+    list3.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY1, TOPIC_PARTITION, 100, 200,
+                                          extension, ZERO_PAD_FMT));
+    list3.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY1, TOPIC_PARTITION, 201, 300,
+                                          extension, ZERO_PAD_FMT));
+    committedFiles.put(TOPIC_PARTITION, list3);
+
+    topicsDir = this.topicsDir.get(TOPIC_PARTITION2.topic());
+    List<String> list4 = new ArrayList<>();
+    list4.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY2, TOPIC_PARTITION2, 400, 500,
+                                          extension, ZERO_PAD_FMT));
+    list4.add(FileUtils.committedFileName(url, topicsDir, DIRECTORY2, TOPIC_PARTITION2, 501, 800,
+                                          extension, ZERO_PAD_FMT));
+    committedFiles.put(TOPIC_PARTITION2, list4);
+
+    for (TopicPartition tp : tempfiles.keySet()) {
+      for (String file : tempfiles.get(tp)) {
+        fs.createNewFile(new Path(file));
+      }
+    }
+
+    createWALs(tempfiles, committedFiles);
+  }
+
   private void createWALs(Map<TopicPartition, List<String>> tempfiles,
                           Map<TopicPartition, List<String>> committedFiles) throws Exception {
     @SuppressWarnings("unchecked")
@@ -0,0 +1,47 @@
+package io.confluent.connect.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+public class OpenWriterLimiterTest {
+  private static final TopicPartition TP1 = new TopicPartition("topic", 1);
+  private static final TopicPartition TP2 = new TopicPartition("topic", 2);
+
+  @Test
+  public void testRequestsEvictionOfLeastRecentlyUsedWriter() {
+    OpenWriterLimiter limiter = new OpenWriterLimiter(2);
+    assertTrue(limiter.tryAcquire(TP1, "a"));
+    assertTrue(limiter.tryAcquire(TP2, "b"));
+    limiter.used(TP1, "a");
+
+    assertFalse(limiter.tryAcquire(TP1, "c"));
+    assertTrue(limiter.isEvictionRequested(TP2));
+    assertFalse(limiter.isEvictionRequested(TP1));
+    assertEquals(2, limiter.openWriters());
+
+    limiter.closed(TP2, "b");
+    assertFalse(limiter.isEvictionRequested(TP2));
+    assertEquals(1, limiter.openWriters());
+    assertEquals(1, limiter.evictions());
+    assertTrue(limiter.tryAcquire(TP1, "c"));
+    assertEquals(2, limiter.openWriters());
+  }
+
+  @Test
+  public void testClosedAllForgetsWritersOfTopicPartition() {
+    OpenWriterLimiter limiter = new OpenWriterLimiter(2);
+    limiter.opened(TP1, "a");
+    limiter.opened(TP1, "b");
+    assertFalse(limiter.tryAcquire(TP2, "c"));
+    assertTrue(limiter.isEvictionRequested(TP1));
+
+    limiter.closedAll(TP1);
+    assertFalse(limiter.isEvictionRequested(TP1));
+    assertEquals(0, limiter.openWriters());
+    assertEquals(0, limiter.evictions());
+  }
+}
@@ -38,6 +38,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import io.confluent.common.utils.MockTime;
@@ -63,6 +65,7 @@ import io.confluent.connect.storage.wal.WAL;
 import static io.confluent.connect.storage.StorageSinkConnectorConfig.FLUSH_SIZE_CONFIG;
 import static org.apache.kafka.common.utils.Time.SYSTEM;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
@@ -185,6 +188,78 @@ public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
     assertEquals(81, topicPartitionWriter.offset());
   }
 
+  @Test
+  public void testWriteRecordFieldPartitionerCommittingFilesConcurrently() throws Exception {
+    setUp();
+    Partitioner partitioner = new FieldPartitioner();
+    partitioner.configure(parsedConfig);
+
+    @SuppressWarnings("unchecked")
+    List<String> partitionFields = (List<String>) parsedConfig.get(
+        PartitionerConfig.PARTITION_FIELD_NAME_CONFIG
+    );
+    String partitionField = partitionFields.get(0);
+
+    ExecutorService fileExecutor = Executors.newFixedThreadPool(3);
+    TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        fileExecutor,
+        time,
+        TOPIC
+    );
+
+    Schema schema = createSchema();
+    List<Struct> records = new ArrayList<>();
+    // Every rotation has one file for each of the three field values
+    for (int j = 0; j < 3; ++j) {
+      for (int i = 16; i < 19; ++i) {
+        records.add(createRecord(schema, i, 12.2f));
+      }
+    }
+    // Add a single records at the end of the batches sequence
+    records.add(createRecord(schema));
+    List<SinkRecord> sinkRecords = createSinkRecords(records, schema);
+
+    for (SinkRecord record : sinkRecords) {
+      topicPartitionWriter.buffer(record);
+    }
+
+    topicPartitionWriter.recover();
+    topicPartitionWriter.write();
+    assertEquals(9, topicPartitionWriter.offset());
+    topicPartitionWriter.close();
+    fileExecutor.shutdownNow();
+
+    Set<Path> expectedFiles = new HashSet<>();
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    for (int offset = 0; offset < 9; ++offset) {
+      String directory = partitioner.generatePartitionedPath(
+          TOPIC,
+          partitionField + "=" + records.get(offset).get("int")
+      );
+      expectedFiles.add(new Path(FileUtils.committedFileName(url, topicsDir, directory,
+          TOPIC_PARTITION, offset, offset, extension, zeroPadFormat)));
+    }
+
+    List<Struct> committedRecords = new ArrayList<>(records.subList(0, 9));
+    committedRecords.sort(Comparator.comparingInt(s -> (int) s.get("int")));
+    verify(expectedFiles, 1, committedRecords, schema);
+  }
+
   @Test
   public void testWriteRecordDefaultWithPadding() throws Exception {
     localProps.put(HdfsSinkConnectorConfig.FILENAME_OFFSET_ZERO_PAD_WIDTH_CONFIG, "2");
@@ -229,6 +304,160 @@ public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
     verify(expectedFiles, expectedBatchSize, records, schema);
   }
 
+  @Test
+  public void testWriteRecordWithBoundedBuffer() throws Exception {
+    localProps.put(HdfsSinkConnectorConfig.PARTITION_BUFFER_MAX_RECORDS_CONFIG, "4");
+    setUp();
+    Partitioner partitioner = new DefaultPartitioner();
+    partitioner.configure(parsedConfig);
+    TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+
+    Schema schema = createSchema();
+    List<Struct> records = createRecordBatches(schema, 3, 3);
+    records.add(createRecord(schema));
+    List<SinkRecord> sinkRecords = createSinkRecords(records, schema);
+
+    // Only the first 4 records fit, the rest is consumed again after the buffer was written
+    for (SinkRecord record : sinkRecords) {
+      topicPartitionWriter.buffer(record);
+    }
+    topicPartitionWriter.recover();
+    topicPartitionWriter.write();
+    assertEquals(3, topicPartitionWriter.offset());
+
+    for (SinkRecord record : sinkRecords.subList(4, sinkRecords.size())) {
+      topicPartitionWriter.buffer(record);
+    }
+    topicPartitionWriter.write();
+    assertEquals(6, topicPartitionWriter.offset());
+
+    for (SinkRecord record : sinkRecords.subList(8, sinkRecords.size())) {
+      topicPartitionWriter.buffer(record);
+    }
+    topicPartitionWriter.write();
+    assertEquals(9, topicPartitionWriter.offset());
+    topicPartitionWriter.close();
+
+    Set<Path> expectedFiles = new HashSet<>();
+    String directory = partitioner.generatePartitionedPath(TOPIC, "partition=" + PARTITION);
+    for (int i = 0; i < 9; i += 3) {
+      expectedFiles.add(new Path(FileUtils.committedFileName(url, topicsDir.get(TOPIC), directory,
+          TOPIC_PARTITION, i, i + 2, extension, zeroPadFormat)));
+    }
+    int expectedBatchSize = 3;
+    verify(expectedFiles, expectedBatchSize, records, schema);
+  }
+
+  @Test
+  public void testOpenWriterLimitWhenOtherTopicPartitionHoldsLeastRecentlyUsedWriter()
+      throws Exception {
+    setUp();
+    Partitioner partitioner = new FieldPartitioner();
+    partitioner.configure(parsedConfig);
+    @SuppressWarnings("unchecked")
+    List<String> partitionFields = (List<String>) parsedConfig.get(
+        PartitionerConfig.PARTITION_FIELD_NAME_CONFIG
+    );
+    String partitionField = partitionFields.get(0);
+
+    OpenWriterLimiter limiter = new OpenWriterLimiter(2);
+    TopicPartitionWriter writer1 = newLimitedWriter(TOPIC_PARTITION, partitioner, limiter);
+    TopicPartitionWriter writer2 = newLimitedWriter(TOPIC_PARTITION2, partitioner, limiter);
+    Schema schema = createSchema();
+
+    bufferRecords(writer2, TOPIC_PARTITION2, schema, 0, 16, 17);
+    writer2.recover();
+    writer2.write();
+    assertEquals(2, limiter.openWriters());
+
+    // Without writers to free, the topic partition waits for the other one to rotate
+    bufferRecords(writer1, TOPIC_PARTITION, schema, 0, 18);
+    writer1.recover();
+    writer1.write();
+    assertEquals(2, limiter.openWriters());
+    assertEquals(-1, writer1.offset());
+    assertTrue(limiter.isEvictionRequested(TOPIC_PARTITION2));
+
+    writer2.write();
+    assertEquals(2, writer2.offset());
+    assertEquals(0, limiter.openWriters());
+    writer1.write();
+    assertEquals(1, limiter.openWriters());
+
+    // The least recently used writer belongs to the other topic partition, which is asked to
+    // rotate, and this one rotates as well to free a writer
+    bufferRecords(writer2, TOPIC_PARTITION2, schema, 2, 16);
+    writer2.write();
+    bufferRecords(writer2, TOPIC_PARTITION2, schema, 3, 17);
+    writer2.write();
+    assertEquals(2, limiter.openWriters());
+    assertEquals(3, writer2.offset());
+    assertTrue(limiter.isEvictionRequested(TOPIC_PARTITION));
+
+    String topicsDir = this.topicsDir.get(TOPIC);
+    long[][] committed = {{16, 0}, {17, 1}, {16, 2}};
+    for (long[] file : committed) {
+      String directory = partitioner.generatePartitionedPath(
+          TOPIC,
+          partitionField + "=" + file[0]
+      );
+      assertTrue(fs.exists(new Path(FileUtils.committedFileName(url, topicsDir, directory,
+          TOPIC_PARTITION2, file[1], file[1], extension, zeroPadFormat))));
+    }
+    writer1.close();
+    writer2.close();
+    assertEquals(0, limiter.openWriters());
+  }
+
+  private TopicPartitionWriter newLimitedWriter(
+      TopicPartition tp,
+      Partitioner partitioner,
+      OpenWriterLimiter limiter
+  ) {
+    return new TopicPartitionWriter(
+        tp,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        limiter,
+        null,
+        time,
+        TOPIC
+    );
+  }
+
+  private void bufferRecords(TopicPartitionWriter writer, TopicPartition tp, Schema schema,
+      long startOffset, int... values) {
+    List<Struct> records = new ArrayList<>();
+    for (int value : values) {
+      records.add(createRecord(schema, value, 12.2f));
+    }
+    for (SinkRecord record
+        : createSinkRecords(records, schema, startOffset, Collections.singleton(tp))) {
+      writer.buffer(record);
+    }
+  }
+
   @Test
   public void testWriteRecordDefaultWithPaddingCorruptRecovery() throws Exception {
     localProps.put(HdfsSinkConnectorConfig.FILENAME_OFFSET_ZERO_PAD_WIDTH_CONFIG, "2");
@@ -267,7 +496,7 @@ public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
 
     // Write enough bytes to trigger a sync
     String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
-    for (int i = 0; i < 20; ++i) {
+    for (int i = 0; i < 40; ++i) {
       long startOffset = i * 10;
       long endOffset = (i + 1) * 10 - 1;
       String tempfile = FileUtils.tempFileName(url, topicsDir, partitioner.generatePartitionedPath(TOPIC, "partition=" + PARTITION), extension);
@@ -305,6 +534,126 @@ public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
     verify(expectedFiles, expectedBatchSize, records, schema);
   }
 
+  @Test
+  public void testRecoveryWaitsForWALLeaseWithoutBlocking() throws Exception {
+    setUp();
+    Partitioner partitioner = new DefaultPartitioner();
+    partitioner.configure(parsedConfig);
+    TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+
+    // Another task still holds the lease on the WAL of the topic partition
+    FSWAL otherWal = new FSWAL(logsDir, TOPIC_PARTITION, storage);
+    otherWal.acquireLease();
+
+    Schema schema = createSchema();
+    List<Struct> records = createRecordBatches(schema, 3, 3);
+    for (SinkRecord record : createSinkRecords(records, schema)) {
+      topicPartitionWriter.buffer(record);
+    }
+
+    assertFalse(topicPartitionWriter.recover());
+    assertTrue(topicPartitionWriter.isWaitingForLease());
+    time.sleep(1000);
+    assertEquals(1000, topicPartitionWriter.leaseWaitMs());
+    topicPartitionWriter.write();
+    assertEquals(-1, topicPartitionWriter.offset());
+
+    otherWal.close();
+    time.sleep(connectorConfig.getLong(HdfsSinkConnectorConfig.RETRY_BACKOFF_CONFIG));
+    topicPartitionWriter.write();
+    assertFalse(topicPartitionWriter.isWaitingForLease());
+    assertEquals(9, topicPartitionWriter.offset());
+    topicPartitionWriter.close();
+  }
+
+  @Test
+  public void testRecoveryReadsOffsetFromCommittedOffsetFile() throws Exception {
+    localProps.put(HdfsSinkConnectorConfig.COMMITTED_OFFSET_FILE_ENABLED_CONFIG, "true");
+    setUp();
+    Partitioner partitioner = new DefaultPartitioner();
+    partitioner.configure(parsedConfig);
+    TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+
+    Schema schema = createSchema();
+    List<Struct> records = createRecordBatches(schema, 3, 3);
+    for (SinkRecord record : createSinkRecords(records, schema)) {
+      topicPartitionWriter.buffer(record);
+    }
+    topicPartitionWriter.recover();
+    topicPartitionWriter.write();
+    topicPartitionWriter.close();
+
+    String committedOffsetFile =
+        FileUtils.fileName(url, logsDir, TOPIC_PARTITION, "committed");
+    assertTrue(storage.exists(committedOffsetFile));
+
+    // Without a WAL the offset comes from the committed offset file
+    String logFile = FileUtils.logFileName(url, logsDir, TOPIC_PARTITION);
+    storage.delete(logFile);
+    storage.delete(logFile + ".1");
+    // A newer file in another directory is only found by a scan, which must not happen
+    String topicsDir = this.topicsDir.get(TOPIC);
+    String ignoredFile = FileUtils.committedFileName(
+        url, topicsDir, TOPIC + "/ignored", TOPIC_PARTITION, 100, 200, extension, zeroPadFormat);
+    storage.create(ignoredFile, true).close();
+
+    topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+    topicPartitionWriter.recover();
+    assertEquals(9, topicPartitionWriter.offset());
+    topicPartitionWriter.close();
+
+    // A committed offset file naming a file that's gone falls back to the scan
+    String directory = TOPIC + "/partition=" + PARTITION;
+    storage.delete(FileUtils.committedFileName(
+        url, topicsDir, directory, TOPIC_PARTITION, 6, 8, extension, zeroPadFormat));
+    storage.delete(logFile);
+    storage.delete(logFile + ".1");
+    topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+    topicPartitionWriter.recover();
+    assertEquals(201, topicPartitionWriter.offset());
+    topicPartitionWriter.close();
+  }
+
   @Test
   public void testCloseMultipleTempFiles() throws Exception {
     setUp();
@@ -0,0 +1,63 @@
+package io.confluent.connect.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WriterMemoryManagerTest {
+  private static final long MB = 1024 * 1024;
+
+  @Test
+  public void testAllocationsStayWithinBudget() {
+    WriterMemoryManager manager = new WriterMemoryManager(100 * MB);
+    WriterMemoryManager.Allocation a = manager.register("a", 64 * MB, false);
+    assertEquals(64 * MB, a.size());
+    // Gets what's left of the budget, and the first writer is asked to rotate to free its share
+    WriterMemoryManager.Allocation b = manager.register("b", 64 * MB, false);
+    assertEquals(36 * MB, b.size());
+    assertTrue(a.isRotationRequested());
+    assertFalse(b.isRotationRequested());
+    assertEquals(100 * MB, manager.allocated());
+
+    // Once rotated, the first writer is opened again with its share
+    a.release();
+    a = manager.register("a", 64 * MB, false);
+    assertEquals(50 * MB, a.size());
+    assertFalse(a.isRotationRequested());
+    assertEquals(86 * MB, manager.allocated());
+
+    // Writers get the minimum allocation over the budget until larger ones rotate
+    WriterMemoryManager.Allocation c = manager.register("c", 64 * MB, false);
+    assertEquals(14 * MB, c.size());
+    assertTrue(a.isRotationRequested());
+    assertEquals(MB, manager.register("d", 64 * MB, true).size());
+    assertEquals(101 * MB, manager.allocated());
+    assertEquals(MB, new WriterMemoryManager(MB / 2).register("e", 64 * MB, true).size());
+  }
+
+  @Test
+  public void testLargestFlushableWriterFlushesOverBudget() {
+    WriterMemoryManager manager = new WriterMemoryManager(10 * MB);
+    WriterMemoryManager.Allocation small = manager.register("small", 64 * MB, true);
+    WriterMemoryManager.Allocation large = manager.register("large", 64 * MB, true);
+    WriterMemoryManager.Allocation parquet = manager.register("parquet", 64 * MB, false);
+
+    assertFalse(writeRows(small, 2 * MB));
+    assertFalse(writeRows(parquet, 5 * MB));
+    assertEquals(7 * MB, manager.totalMemoryUsage());
+    // Reporting goes over the budget, the largest writer that can flush is asked to
+    assertTrue(writeRows(large, 4 * MB));
+    assertEquals(7 * MB, manager.totalMemoryUsage());
+    assertFalse(large.rowWritten(() -> 0));
+  }
+
+  private static boolean writeRows(WriterMemoryManager.Allocation allocation, long used) {
+    boolean flush = false;
+    for (int i = 0; i < WriterMemoryManager.CHECK_INTERVAL_ROWS; i++) {
+      flush = allocation.rowWritten(() -> used) || flush;
+    }
+    return flush;
+  }
+}
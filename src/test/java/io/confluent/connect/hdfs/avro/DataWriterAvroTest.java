@@ -153,7 +153,7 @@ public class DataWriterAvroTest extends TestWithMiniDFSCluster {
     wal.append(WAL.beginMarker, "");
 
     // Write enough bytes to trigger a sync
-    for (int i = 0; i < 20; ++i) {
+    for (int i = 0; i < 40; ++i) {
       long startOffset = i * 10;
       long endOffset = (i + 1) * 10 - 1;
       String tempfile = FileUtils.tempFileName(url, topicsDir, getDirectory(), extension);
@@ -212,6 +212,63 @@ public class DataWriterAvroTest extends TestWithMiniDFSCluster {
     verify(sinkRecords, validOffsets, context.assignment());
   }
 
+  @Test
+  public void testWriteInterleavedRecordsInMultiplePartitionsConcurrently() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.PARTITION_WRITER_THREADS_CONFIG, "3");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+
+    for (TopicPartition tp : context.assignment()) {
+      hdfsWriter.recover(tp);
+    }
+
+    List<SinkRecord> sinkRecords = createSinkRecordsInterleaved(7 * context.assignment().size(), 0,
+        context.assignment());
+
+    hdfsWriter.write(sinkRecords);
+    for (TopicPartition tp : context.assignment()) {
+      assertEquals(6L, (long) hdfsWriter.getCommittedOffsets().get(tp));
+    }
+    boolean found = false;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("hdfs-sink-") && thread.getName().contains("-writer-")) {
+        assertTrue(thread.isDaemon());
+        found = true;
+      }
+    }
+    assertTrue(found);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    long[] validOffsets = {0, 3, 6};
+    verify(sinkRecords, validOffsets, context.assignment());
+  }
+
+  @Test
+  public void testWriteRecordCommittingInBackground() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.ROTATION_COMMIT_MAX_IN_FLIGHT_CONFIG, "2");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(10);
+
+    hdfsWriter.write(sinkRecords);
+    // Closing waits for the rotated files to be committed
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Last file (offset 9) doesn't satisfy size requirement and gets discarded on close
+    long[] validOffsets = {0, 3, 6, 9};
+    verify(sinkRecords, validOffsets);
+  }
+
   @Test
   public void testWriteInterleavedRecordsInMultiplePartitionsNonZeroInitialOffset() throws Exception {
     DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
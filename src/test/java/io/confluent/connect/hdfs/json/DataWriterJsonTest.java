@@ -75,6 +75,28 @@ public class DataWriterJsonTest extends TestWithMiniDFSCluster {
     verify(sinkRecords, validOffsets, context.assignment());
   }
 
+  @Test
+  public void testRotateOnFileSize() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG, "1000");
+    // Every record is larger than this, so each one ends up in its own file
+    props.put(HdfsSinkConnectorConfig.ROTATE_SIZE_BYTES_CONFIG, "1");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(7, 0, context.assignment());
+
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    long[] validOffsets = {0, 1, 2, 3, 4, 5, 6, 7};
+    verify(sinkRecords, validOffsets, context.assignment());
+  }
+
   @Test
   public void testNoSchema() throws Exception {
     DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
@@ -16,17 +16,26 @@
 package io.confluent.connect.hdfs.parquet;
 
 
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import io.confluent.connect.hdfs.DataWriter;
+import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+import io.confluent.connect.hdfs.FileUtils;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
 
+import static org.junit.Assert.assertEquals;
+
 public class DataWriterParquetTest extends TestWithMiniDFSCluster {
 
   @Before
@@ -59,4 +68,63 @@ public class DataWriterParquetTest extends TestWithMiniDFSCluster {
     long[] validOffsets = {0, 3, 6};
     verify(sinkRecords, validOffsets);
   }
+
+  @Test
+  public void testRotatesWriterToStayWithinMemoryBudget() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG, "100");
+    props.put(
+        HdfsSinkConnectorConfig.WRITER_MEMORY_BUDGET_BYTES_CONFIG,
+        String.valueOf(4 * 1024 * 1024)
+    );
+    DataWriter hdfsWriter = new DataWriter(new HdfsSinkConnectorConfig(props), context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+    hdfsWriter.recover(TOPIC_PARTITION2);
+
+    hdfsWriter.write(createSinkRecords(2, 0, Collections.singleton(TOPIC_PARTITION)));
+    assertEquals(0, committedFiles(TOPIC_PARTITION).length);
+    // The writer of the other topic partition can't get its share while the first one holds the
+    // whole budget, so the first one is rotated
+    hdfsWriter.write(createSinkRecords(2, 0, Collections.singleton(TOPIC_PARTITION2)));
+    hdfsWriter.write(createSinkRecords(1, 2, Collections.singleton(TOPIC_PARTITION)));
+    assertEquals(1, committedFiles(TOPIC_PARTITION).length);
+    assertEquals(0, committedFiles(TOPIC_PARTITION2).length);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+  }
+
+  @Test
+  public void testGetSchemaFromFooter() throws Exception {
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(3);
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    Path committedFile = new Path(FileUtils.committedFileName(
+        url,
+        topicsDir.get(TOPIC),
+        TOPIC + "/partition=" + PARTITION,
+        TOPIC_PARTITION,
+        0,
+        2,
+        extension,
+        zeroPadFormat
+    ));
+    Schema schema = new ParquetFileReader(avroData).getSchema(connectorConfig, committedFile);
+    assertEquals(sinkRecords.get(0).valueSchema(), schema);
+  }
+
+  private FileStatus[] committedFiles(TopicPartition tp) throws Exception {
+    Path directory = new Path(FileUtils.directoryName(
+        url,
+        topicsDir.get(tp.topic()),
+        tp.topic() + "/partition=" + tp.partition()
+    ));
+    return fs.exists(directory)
+           ? fs.listStatus(directory, new CommittedFileFilter())
+           : new FileStatus[0];
+  }
 }
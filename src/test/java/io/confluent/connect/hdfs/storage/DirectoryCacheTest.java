@@ -0,0 +1,40 @@
+package io.confluent.connect.hdfs.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DirectoryCacheTest {
+
+  @Test
+  public void testEvictsLeastRecentlyUsedDirectory() {
+    DirectoryCache cache = new DirectoryCache(2);
+    cache.add("/a");
+    cache.add("/b");
+    assertTrue(cache.contains("/a"));
+    cache.add("/c");
+
+    assertFalse(cache.contains("/b"));
+    assertTrue(cache.contains("/a"));
+    assertTrue(cache.contains("/c"));
+    assertEquals(3, cache.hits());
+  }
+
+  @Test
+  public void testClear() {
+    DirectoryCache cache = new DirectoryCache(2);
+    cache.add("/a");
+    cache.clear();
+    assertFalse(cache.contains("/a"));
+    assertEquals(0, cache.hits());
+  }
+
+  @Test
+  public void testDisabled() {
+    DirectoryCache cache = new DirectoryCache(0);
+    cache.add("/a");
+    assertFalse(cache.contains("/a"));
+  }
+}
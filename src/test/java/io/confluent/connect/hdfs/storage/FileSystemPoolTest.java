@@ -0,0 +1,62 @@
+package io.confluent.connect.hdfs.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class FileSystemPoolTest {
+
+  @Test
+  public void testSharesFileSystemOfSameScheme() throws IOException {
+    FileSystemPool pool = new FileSystemPool(new Configuration());
+    FileSystem first = pool.acquire(new Path("file:///tmp/a"));
+    FileSystem second = pool.acquire(new Path("file:///tmp/b"));
+    assertSame(first, second);
+    assertEquals(1, pool.created());
+    assertEquals(1, pool.reused());
+
+    pool.release(new Path("file:///tmp/a"));
+    pool.release(new Path("file:///tmp/b"));
+    FileSystem third = pool.acquire(new Path("file:///tmp/c"));
+    assertSame(first, third);
+    assertEquals(1, pool.created());
+    pool.release(new Path("file:///tmp/c"));
+    pool.close();
+  }
+
+  @Test
+  public void testClosesUsedFileSystemOnceReleased() throws IOException {
+    FileSystemPool pool = new FileSystemPool(new Configuration());
+    FileSystem fs = pool.acquire(new Path("file:///tmp/a"));
+    pool.close();
+    // still usable by the stream that acquired it
+    fs.exists(new Path("file:///tmp"));
+    pool.release(new Path("file:///tmp/a"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testAcquireAfterCloseThrows() throws IOException {
+    FileSystemPool pool = new FileSystemPool(new Configuration());
+    pool.close();
+    pool.acquire(new Path("file:///tmp/a"));
+  }
+
+  @Test
+  public void testCreatesFileSystemPerScheme() throws IOException {
+    FileSystemPool pool = new FileSystemPool(new Configuration());
+    FileSystem local = pool.acquire(new Path("file:///tmp/a"));
+    FileSystem defaultFs = pool.acquire(new Path("/tmp/a"));
+    assertNotSame(local, defaultFs);
+    assertEquals(2, pool.created());
+    pool.release(new Path("file:///tmp/a"));
+    pool.release(new Path("/tmp/a"));
+    pool.close();
+  }
+}
@@ -0,0 +1,127 @@
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HdfsStorageAsyncTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testFailureCompletesFutureWithException() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String missing = url + "/missing";
+    try {
+      storage.listAsync(missing).join();
+      fail("Expected the listing of a missing directory to fail");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof ConnectException);
+    }
+    try {
+      storage.listAsync(missing).get();
+      fail("Expected the listing of a missing directory to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ConnectException);
+    }
+    // A failure doesn't affect later operations
+    assertFalse(storage.existsAsync(missing).join());
+    storage.close();
+  }
+
+  @Test
+  public void testRunsOperationsOnNamedDaemonThreads() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    assertTrue(storage.createAsync(url + "/dir").join());
+
+    boolean found = false;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("hdfs-storage-")) {
+        assertTrue(thread.getName().contains("-async-"));
+        assertTrue(thread.isDaemon());
+        found = true;
+      }
+    }
+    assertTrue(found);
+    storage.close();
+  }
+
+  @Test
+  public void testEnsureDirectoryCreatesItOnce() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String directory = url + "/parent/dir";
+    storage.ensureDirectoryAsync(directory).join();
+    assertTrue(storage.exists(directory));
+    assertEquals(0, storage.directoryChecksSaved());
+
+    // Known to exist now, so it's neither checked nor created again
+    assertTrue(storage.ensureDirectoryAsync(directory).isDone());
+    assertEquals(1, storage.directoryChecksSaved());
+    storage.close();
+  }
+
+  @Test
+  public void testOperationsFailAfterClose() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    assertFalse(storage.existsAsync(url + "/missing").join());
+    storage.close();
+
+    CompletableFuture<Boolean> exists = storage.existsAsync(url + "/missing");
+    try {
+      exists.join();
+      fail("Expected an operation issued after close to fail");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof ConnectException);
+      assertTrue(e.getCause().getMessage().contains("closed"));
+    }
+  }
+
+  @Test
+  public void testOperationsFailWhenClosedBeforeFirstUse() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    storage.close();
+
+    try {
+      storage.deleteAsync(url + "/missing").join();
+      fail("Expected an operation issued after close to fail");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof ConnectException);
+    }
+  }
+
+  @Test
+  public void testOperationsIssuedBeforeCloseComplete() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      futures.add(storage.existsAsync(url + "/file" + i));
+    }
+    storage.close();
+
+    for (CompletableFuture<Boolean> future : futures) {
+      try {
+        future.get(30, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        // expected for the operations that ran after the FileSystem was closed
+        assertTrue(e.getCause() instanceof ConnectException);
+      }
+    }
+  }
+}
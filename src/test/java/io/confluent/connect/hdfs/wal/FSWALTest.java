@@ -15,6 +15,7 @@
 
 package io.confluent.connect.hdfs.wal;
 
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
@@ -23,10 +24,13 @@ import java.io.OutputStream;
 
 import io.confluent.connect.hdfs.FileUtils;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.io.IOException;
 
 import io.confluent.connect.hdfs.DataWriter;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 
@@ -269,6 +273,58 @@ public class FSWALTest extends TestWithMiniDFSCluster {
     assertEquals(49, latestOffset);
   }
 
+  @Test
+  public void testOffsetsExtractedFromTailOfLargeWAL() throws Exception {
+    setupWalTest();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    FSWAL wal = (FSWAL) storage.wal(logsDir, TOPIC_PARTITION);
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    long offset = 0;
+    try (WALFile.Writer writer = WALFile.createWriter(connectorConfig,
+        WALFile.Writer.file(new Path(wal.getLogFile())))) {
+      // Filled blocks spanning several tail windows, followed by empty blocks spanning several more
+      while (writer.getLength() < 4 * FSWAL.TAIL_WINDOW_BYTES) {
+        String tempfile = FileUtils.tempFileName(url, topicsDir, getDirectory(), extension);
+        String committedFile = FileUtils.committedFileName(url, topicsDir, getDirectory(),
+            TOPIC_PARTITION, offset, offset + 9, extension, zeroPadFormat);
+        writer.append(new WALEntry(WAL.beginMarker), new WALEntry(""));
+        writer.append(new WALEntry(tempfile), new WALEntry(committedFile));
+        writer.append(new WALEntry(WAL.endMarker), new WALEntry(""));
+        offset += 10;
+      }
+      long filledLength = writer.getLength();
+      while (writer.getLength() < filledLength + 3 * FSWAL.TAIL_WINDOW_BYTES) {
+        writer.append(new WALEntry(WAL.beginMarker), new WALEntry(""));
+        writer.append(new WALEntry(WAL.endMarker), new WALEntry(""));
+      }
+    }
+
+    assertEquals(offset - 1, wal.extractLatestOffset().getOffset());
+  }
+
+  @Test
+  public void testOffsetsExtractedFromBlocksAppendedWithHflush() throws Exception {
+    setupWalTest();
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.WAL_SYNC_MODE_CONFIG,
+        HdfsSinkConnectorConfig.WAL_SYNC_MODE_HFLUSH);
+    HdfsStorage storage = new HdfsStorage(new HdfsSinkConnectorConfig(props), url);
+    FSWAL wal = (FSWAL) storage.wal(logsDir, TOPIC_PARTITION);
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    String committedFile = null;
+    for (int i = 0; i < 3; ++i) {
+      String tempfile = FileUtils.tempFileName(url, topicsDir, getDirectory(), extension);
+      fs.createNewFile(new Path(tempfile));
+      committedFile = FileUtils.committedFileName(url, topicsDir, getDirectory(), TOPIC_PARTITION,
+          i * 10, (i + 1) * 10 - 1, extension, zeroPadFormat);
+      wal.appendBlock(Collections.singletonMap(tempfile, committedFile));
+    }
+    wal.apply();
+
+    assertTrue(fs.exists(new Path(committedFile)));
+    assertEquals(29, wal.extractLatestOffset().getOffset());
+  }
+
   @Test
   public void testOffsetsExtractedFromOldWAL() throws Exception {
     setupWalTest();
@@ -282,6 +338,63 @@ public class FSWALTest extends TestWithMiniDFSCluster {
     assertEquals(49, latestOffset);
   }
 
+  @Test
+  public void testApplyCommitsCheckpointedTempFile() throws Exception {
+    setupWalTest();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    FSWAL wal = (FSWAL) storage.wal(logsDir, TOPIC_PARTITION);
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    addSampleEntriesToWAL(topicsDir, wal, 1);
+
+    String tempfile = FileUtils.tempFileName(url, topicsDir, getDirectory(), extension);
+    String committedFile = FileUtils.committedFileName(url, topicsDir, getDirectory(),
+        TOPIC_PARTITION, 10, 14, extension, zeroPadFormat);
+    FSDataOutputStream out = fs.create(new Path(tempfile));
+    out.write(new byte[100]);
+    out.hflush();
+    wal.checkpoint(Collections.singletonList(new FSWAL.Checkpoint(tempfile, 100, committedFile)));
+    // records after the checkpoint, the writer fails without closing the temp file
+    out.write(new byte[50]);
+    out.hflush();
+    wal.close();
+
+    FSWAL recoveredWal = (FSWAL) storage.wal(logsDir, TOPIC_PARTITION);
+    // Retried without blocking until the lease of the temp file is recovered
+    while (!recoveredWal.tryApply()) {
+      Thread.sleep(100);
+    }
+
+    assertFalse(fs.exists(new Path(tempfile)));
+    assertEquals(100, fs.getFileStatus(new Path(committedFile)).getLen());
+    assertEquals(14, recoveredWal.extractLatestOffset().getOffset());
+  }
+
+  @Test
+  public void testApplyIgnoresCheckpointOfCommittedTempFile() throws Exception {
+    setupWalTest();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    FSWAL wal = (FSWAL) storage.wal(logsDir, TOPIC_PARTITION);
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+
+    String tempfile = FileUtils.tempFileName(url, topicsDir, getDirectory(), extension);
+    fs.createNewFile(new Path(tempfile));
+    String checkpointedFile = FileUtils.committedFileName(url, topicsDir, getDirectory(),
+        TOPIC_PARTITION, 0, 4, extension, zeroPadFormat);
+    wal.checkpoint(Collections.singletonList(new FSWAL.Checkpoint(tempfile, 0, checkpointedFile)));
+    String committedFile = FileUtils.committedFileName(url, topicsDir, getDirectory(),
+        TOPIC_PARTITION, 0, 9, extension, zeroPadFormat);
+    wal.append(WAL.beginMarker, "");
+    wal.append(tempfile, committedFile);
+    wal.append(WAL.endMarker, "");
+    wal.close();
+
+    wal.apply();
+
+    assertTrue(fs.exists(new Path(committedFile)));
+    assertFalse(fs.exists(new Path(checkpointedFile)));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+  }
+
   private void setupWalTest() throws Exception {
     setUp();
     String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
@@ -324,6 +437,35 @@ public class FSWALTest extends TestWithMiniDFSCluster {
     wal.apply();
   }
 
+  @Test
+  public void testApplyCommitsBlockAcrossDirectories() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    TopicPartition tp = new TopicPartition("mytopic", 123);
+    FSWAL wal = new FSWAL("/logs", tp, storage);
+    String[] tempFiles = {"/tmp/a", "/tmp/b", "/tmp/c", "/tmp/d"};
+    String[] committedFiles = {"/topics/x/a", "/topics/x/b", "/topics/x/c", "/topics/y/d"};
+    for (String tempFile : tempFiles) {
+      fs.createNewFile(new Path(tempFile));
+    }
+    // Committed before the failure, its temp file is gone
+    fs.delete(new Path(tempFiles[1]), false);
+    fs.createNewFile(new Path(committedFiles[1]));
+
+    wal.append(WAL.beginMarker, "");
+    for (int i = 0; i < tempFiles.length; ++i) {
+      wal.append(tempFiles[i], committedFiles[i]);
+    }
+    wal.append(WAL.endMarker, "");
+    wal.apply();
+
+    for (int i = 0; i < tempFiles.length; ++i) {
+      assertFalse(fs.exists(new Path(tempFiles[i])));
+      assertTrue(fs.exists(new Path(committedFiles[i])));
+    }
+    wal.close();
+  }
+
 
   @Test
   public void testAcquireLeaseThrowsException() throws Exception {
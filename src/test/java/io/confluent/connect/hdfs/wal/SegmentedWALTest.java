@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedWALTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testDeletesSegmentsOnceTheirFilesAreCommitted() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    assertTrue(wal instanceof SegmentedWAL);
+
+    Map<String, String> block1 = newBlock(TOPIC_PARTITION, 0, 9);
+    wal.appendBlock(block1);
+    // Every block rolls the WAL over to a new segment, since segments hold a single byte
+    Map<String, String> block2 = newBlock(TOPIC_PARTITION, 10, 19);
+    wal.appendBlock(block2);
+    assertTrue(fs.exists(segment(0)));
+    assertTrue(fs.exists(segment(1)));
+
+    wal.blockCommitted(block1);
+    awaitDeleted(segment(0));
+    assertTrue(fs.exists(segment(1)));
+    storage.close();
+  }
+
+  @Test
+  public void testRecoveryAppliesSegmentsWithoutRenamingThem() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    Map<String, String> block1 = newBlock(TOPIC_PARTITION, 0, 9);
+    Map<String, String> block2 = newBlock(TOPIC_PARTITION, 10, 19);
+    wal.appendBlock(block1);
+    wal.appendBlock(block2);
+    wal.close();
+    storage.close();
+
+    storage = newStorage();
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.apply();
+    assertTrue(fs.exists(new Path(block1.values().iterator().next())));
+    assertTrue(fs.exists(new Path(block2.values().iterator().next())));
+    assertEquals(19, wal.extractLatestOffset().getOffset());
+
+    wal.truncate();
+    awaitDeleted(segment(0));
+    assertTrue(fs.exists(segment(1)));
+    String logFile = FileUtils.logFileName(url, logsDir, TOPIC_PARTITION);
+    assertFalse(fs.exists(new Path(logFile)));
+    assertFalse(fs.exists(new Path(logFile + ".1")));
+    wal.close();
+    storage.close();
+
+    storage = newStorage();
+    assertEquals(19, storage.wal(logsDir, TOPIC_PARTITION).extractLatestOffset().getOffset());
+    storage.close();
+  }
+
+  @Test
+  public void testRecoverySkipsBlocksOfNewestSegmentAppliedBefore() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    Map<String, String> block = newBlock(TOPIC_PARTITION, 0, 9);
+    wal.appendBlock(block);
+    wal.close();
+    storage.close();
+
+    storage = newStorage();
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.apply();
+    wal.truncate();
+    wal.close();
+    storage.close();
+
+    // Were the block applied again, its temp file would be committed again
+    Path tempFile = new Path(block.keySet().iterator().next());
+    Path committedFile = new Path(block.values().iterator().next());
+    assertTrue(fs.exists(committedFile));
+    fs.delete(committedFile, false);
+    fs.createNewFile(tempFile);
+
+    storage = newStorage();
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.apply();
+    assertFalse(fs.exists(committedFile));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+    wal.close();
+    storage.close();
+  }
+
+  @Test
+  public void testAppliesWALOfTopicPartitionWrittenBeforeSegments() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Map<String, String> block = newBlock(TOPIC_PARTITION, 0, 9);
+    WAL legacyWal = storage.wal(logsDir, TOPIC_PARTITION);
+    legacyWal.appendBlock(block);
+    legacyWal.close();
+    storage.close();
+
+    storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.apply();
+    assertTrue(fs.exists(new Path(block.values().iterator().next())));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+    wal.truncate();
+    assertFalse(fs.exists(new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION))));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+    wal.close();
+    storage.close();
+  }
+
+  @Test
+  public void testRecoveryTriesTheLeaseOfEverySegment() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    Map<String, String> block1 = newBlock(TOPIC_PARTITION, 0, 9);
+    Map<String, String> block2 = newBlock(TOPIC_PARTITION, 10, 19);
+    wal.appendBlock(block1);
+    wal.appendBlock(block2);
+    wal.close();
+
+    // Another task still holds the lease of the older segment
+    FSWAL holder = new FSWAL(storage, segment(0).toString(), false);
+    holder.acquireLease();
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    assertFalse(wal.tryAcquireLease());
+    try {
+      wal.apply();
+      fail("Expected apply to fail without waiting for the lease");
+    } catch (ConnectException e) {
+      // expected
+    }
+
+    holder.close();
+    assertTrue(wal.tryAcquireLease());
+    wal.apply();
+    assertTrue(fs.exists(new Path(block1.values().iterator().next())));
+    assertTrue(fs.exists(new Path(block2.values().iterator().next())));
+    wal.close();
+    storage.close();
+  }
+
+  @Test
+  public void testCannotRollOverOnceLeaseIsTakenOver() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage();
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.appendBlock(newBlock(TOPIC_PARTITION, 0, 9));
+
+    // Another task takes the topic partition over
+    for (int i = 0; i < 100 && !storage.recoverLease(segment(0).toString()); ++i) {
+      Thread.sleep(50);
+    }
+    Map<String, String> block = newBlock(TOPIC_PARTITION, 10, 19);
+    try {
+      wal.appendBlock(block);
+      fail("Expected rolling over to fail");
+    } catch (ConnectException e) {
+      // expected
+    }
+    wal.close();
+
+    WAL newOwner = storage.wal(logsDir, TOPIC_PARTITION);
+    newOwner.apply();
+    assertFalse(fs.exists(new Path(block.values().iterator().next())));
+    assertEquals(9, newOwner.extractLatestOffset().getOffset());
+    newOwner.close();
+    storage.close();
+  }
+
+  private HdfsStorage newStorage() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.WAL_SEGMENT_BYTES_CONFIG, "1");
+    return new HdfsStorage(new HdfsSinkConnectorConfig(props), url);
+  }
+
+  private Path segment(long sequence) {
+    String logFile = FileUtils.logFileName(url, logsDir, TOPIC_PARTITION);
+    return new Path(new Path(logFile).getParent(), String.format("log-%020d", sequence));
+  }
+
+  private Map<String, String> newBlock(TopicPartition tp, long startOffset, long endOffset)
+      throws Exception {
+    String topicsDir = this.topicsDir.get(tp.topic());
+    String directory = getDirectory(tp.topic(), tp.partition());
+    String tempFile = FileUtils.tempFileName(url, topicsDir, directory, extension);
+    fs.createNewFile(new Path(tempFile));
+    String committedFile = FileUtils.committedFileName(url, topicsDir, directory, tp,
+        startOffset, endOffset, extension, zeroPadFormat);
+    return Collections.singletonMap(tempFile, committedFile);
+  }
+
+  private void awaitDeleted(Path path) throws Exception {
+    for (int i = 0; i < 100 && fs.exists(path); ++i) {
+      Thread.sleep(50);
+    }
+    assertFalse(fs.exists(path));
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License (the "License"); you may not use
+ * this file except in compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnector;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskWALTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testAppliesAndTruncatesTopicPartitionsIndependently() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage(0, 1000);
+    WAL wal1 = storage.wal(logsDir, TOPIC_PARTITION);
+    WAL wal2 = storage.wal(logsDir, TOPIC_PARTITION2);
+    String committed1 = appendFile(wal1, TOPIC_PARTITION, 0, 9);
+    String committed2 = appendFile(wal2, TOPIC_PARTITION2, 0, 4);
+    assertEquals(wal1.getLogFile(), wal2.getLogFile());
+
+    wal1.apply();
+    wal1.truncate();
+    assertTrue(fs.exists(new Path(committed1)));
+    assertFalse(fs.exists(new Path(committed2)));
+    wal1.close();
+    wal2.close();
+    storage.close();
+
+    storage = newStorage(0, 1000);
+    wal1 = storage.wal(logsDir, TOPIC_PARTITION);
+    wal2 = storage.wal(logsDir, TOPIC_PARTITION2);
+    assertEquals(9, wal1.extractLatestOffset().getOffset());
+    assertEquals(4, wal2.extractLatestOffset().getOffset());
+    wal2.apply();
+    assertTrue(fs.exists(new Path(committed2)));
+    wal2.close();
+    storage.close();
+  }
+
+  @Test
+  public void testCompactionKeepsLatestOffsetAndPendingBlocks() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage(0, 5);
+    WAL wal1 = storage.wal(logsDir, TOPIC_PARTITION);
+    WAL wal2 = storage.wal(logsDir, TOPIC_PARTITION2);
+    for (int i = 0; i < 5; ++i) {
+      appendFile(wal1, TOPIC_PARTITION, i * 10, i * 10 + 9);
+    }
+    String committed2 = appendFile(wal2, TOPIC_PARTITION2, 0, 4);
+    long lengthBefore = fs.getFileStatus(new Path(wal1.getLogFile())).getLen();
+    wal1.apply();
+    wal1.truncate();
+    assertTrue(fs.getFileStatus(new Path(wal1.getLogFile())).getLen() < lengthBefore);
+    wal1.close();
+    wal2.close();
+    storage.close();
+
+    storage = newStorage(0, 5);
+    wal1 = storage.wal(logsDir, TOPIC_PARTITION);
+    wal2 = storage.wal(logsDir, TOPIC_PARTITION2);
+    assertEquals(49, wal1.extractLatestOffset().getOffset());
+    wal2.apply();
+    assertTrue(fs.exists(new Path(committed2)));
+    wal2.close();
+    storage.close();
+  }
+
+  @Test
+  public void testAppliesBlocksOfOtherTasks() throws Exception {
+    setUp();
+    HdfsStorage storage = newStorage(0, 1000);
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    String committed = appendFile(wal, TOPIC_PARTITION, 0, 9);
+    wal.close();
+    storage.close();
+
+    storage = newStorage(1, 1000);
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    assertNull(storage.wal(logsDir, TOPIC_PARTITION2).extractLatestOffset());
+    wal.apply();
+    assertTrue(fs.exists(new Path(committed)));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+    wal.close();
+    storage.close();
+  }
+
+  @Test
+  public void testAppliesBlocksOtherTasksAppendedAfterLoading() throws Exception {
+    setUp();
+    HdfsStorage storage0 = newStorage(0, 1000);
+    HdfsStorage storage1 = newStorage(1, 1000);
+    WAL wal1 = storage1.wal(logsDir, TOPIC_PARTITION);
+    String committed1 = appendFile(wal1, TOPIC_PARTITION, 0, 4);
+    wal1.close();
+
+    // Task 0 takes the topic partition over after task 1 read its logs
+    WAL wal0 = storage0.wal(logsDir, TOPIC_PARTITION);
+    apply(wal0);
+    assertTrue(fs.exists(new Path(committed1)));
+    wal0.truncate();
+    String committed0 = appendFile(wal0, TOPIC_PARTITION, 5, 9);
+    wal0.close();
+
+    // Task 1 gets it back, and resumes after task 0's block rather than its own older one
+    wal1 = storage1.wal(logsDir, TOPIC_PARTITION);
+    apply(wal1);
+    assertTrue(fs.exists(new Path(committed0)));
+    assertEquals(9, wal1.extractLatestOffset().getOffset());
+    wal1.close();
+    storage0.close();
+    storage1.close();
+  }
+
+  @Test
+  public void testFencesTopicPartitionFromOtherTasks() throws Exception {
+    setUp();
+    HdfsStorage storage0 = newStorage(0, 1000);
+    HdfsStorage storage1 = newStorage(1, 1000);
+    WAL wal0 = storage0.wal(logsDir, TOPIC_PARTITION);
+    wal0.apply();
+    appendFile(wal0, TOPIC_PARTITION, 0, 4);
+
+    // Task 1 fences the topic partition, and waits for the log of task 0 to be closed
+    WAL wal1 = storage1.wal(logsDir, TOPIC_PARTITION);
+    apply(wal1);
+    assertTrue(fs.exists(new Path(committedFileName(TOPIC_PARTITION, 0, 4))));
+    wal1.truncate();
+    String committed1 = appendFile(wal1, TOPIC_PARTITION, 5, 9);
+
+    // Task 0 lost the lease of its log, and finds the fence once it opens it again
+    for (int i = 0; i < 2; ++i) {
+      try {
+        appendFile(wal0, TOPIC_PARTITION, 5, 14);
+        fail("Expected appending a block of a topic partition taken over to fail");
+      } catch (ConnectException e) {
+        // expected
+      }
+    }
+    wal0.close();
+    storage0.close();
+    wal1.close();
+    storage1.close();
+
+    storage1 = newStorage(1, 1000);
+    wal1 = storage1.wal(logsDir, TOPIC_PARTITION);
+    wal1.apply();
+    assertTrue(fs.exists(new Path(committed1)));
+    assertFalse(fs.exists(new Path(committedFileName(TOPIC_PARTITION, 5, 14))));
+    assertEquals(9, wal1.extractLatestOffset().getOffset());
+    wal1.close();
+    storage1.close();
+  }
+
+  @Test
+  public void testAppliesWALOfTopicPartitionWrittenBeforeTaskWAL() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    WAL wal = storage.wal(logsDir, TOPIC_PARTITION);
+    String committed = appendFile(wal, TOPIC_PARTITION, 0, 9);
+    wal.close();
+    storage.close();
+
+    storage = newStorage(0, 1000);
+    wal = storage.wal(logsDir, TOPIC_PARTITION);
+    wal.apply();
+    assertTrue(fs.exists(new Path(committed)));
+    assertEquals(9, wal.extractLatestOffset().getOffset());
+    wal.truncate();
+    assertFalse(fs.exists(new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION))));
+    wal.close();
+    storage.close();
+  }
+
+  private static void apply(WAL wal) throws InterruptedException {
+    // The log of the task the topic partition is taken over from may take a while to be closed
+    while (!wal.tryApply()) {
+      Thread.sleep(100);
+    }
+  }
+
+  private HdfsStorage newStorage(int taskId, int compactionRecords) throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnector.TASK_ID_CONFIG_NAME, String.valueOf(taskId));
+    props.put(HdfsSinkConnectorConfig.WAL_TASK_ENABLED_CONFIG, "true");
+    props.put(
+        HdfsSinkConnectorConfig.WAL_TASK_COMPACTION_RECORDS_CONFIG,
+        String.valueOf(compactionRecords)
+    );
+    return new HdfsStorage(new HdfsSinkConnectorConfig(props), url);
+  }
+
+  private String appendFile(WAL wal, TopicPartition tp, long startOffset, long endOffset)
+      throws Exception {
+    String topicsDir = this.topicsDir.get(tp.topic());
+    String directory = getDirectory(tp.topic(), tp.partition());
+    String tempFile = FileUtils.tempFileName(url, topicsDir, directory, extension);
+    fs.createNewFile(new Path(tempFile));
+    String committedFile = committedFileName(tp, startOffset, endOffset);
+    wal.appendBlock(Collections.singletonMap(tempFile, committedFile));
+    return committedFile;
+  }
+
+  private String committedFileName(TopicPartition tp, long startOffset, long endOffset) {
+    return FileUtils.committedFileName(url, topicsDir.get(tp.topic()),
+        getDirectory(tp.topic(), tp.partition()), tp, startOffset, endOffset, extension,
+        zeroPadFormat);
+  }
+}
@@ -19,12 +19,20 @@ import java.rmi.server.UID;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import org.apache.commons.io.Charsets;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.util.Time;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 
 import io.confluent.connect.hdfs.FileUtils;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
@@ -32,7 +40,9 @@ import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
 import io.confluent.connect.storage.common.StorageCommonConfig;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class WALFileTest extends TestWithMiniDFSCluster {
 
@@ -198,6 +208,129 @@ public class WALFileTest extends TestWithMiniDFSCluster {
     }
   }
 
+  @Test
+  public void testReadsAndAppendsToInitialVersion() throws Exception {
+    setUp();
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(properties);
+    Path file = new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION));
+    byte[] sync = new byte[16];
+    new Random().nextBytes(sync);
+    try (FSDataOutputStream out = fs.create(file, true)) {
+      out.write(new byte[] {'W', 'A', 'L', 0});
+      out.write(sync);
+      writeInitialVersionRecord(out, "key1", "val1");
+      writeInitialVersionRecord(out, "key2", "val2");
+    }
+    verify2Values(file);
+
+    WALFile.Writer writer = WALFile.createWriter(
+        connectorConfig,
+        WALFile.Writer.file(file),
+        WALFile.Writer.appendIfExists(true)
+    );
+    writer.append(new WALEntry("key3"), new WALEntry("val3"));
+    writer.append(new WALEntry("key4"), new WALEntry("val4"));
+    writer.close();
+    verifyAll4Values(file);
+  }
+
+  private void writeInitialVersionRecord(FSDataOutputStream out, String key, String value)
+      throws IOException {
+    DataOutputBuffer record = new DataOutputBuffer();
+    new WALEntry(key).write(record);
+    int keyLength = record.getLength();
+    new WALEntry(value).write(record);
+    out.writeInt(record.getLength());
+    out.writeInt(keyLength);
+    out.write(record.getData(), 0, record.getLength());
+  }
+
+  @Test
+  public void testWritesInitialVersionByDefault() throws Exception {
+    setUp();
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(properties);
+    Path file = new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION));
+    WALFile.Writer writer = WALFile.createWriter(connectorConfig, WALFile.Writer.file(file));
+    writer.append(new WALEntry("key1"), new WALEntry("val1"));
+    writer.append(new WALEntry("key2"), new WALEntry("val2"));
+    writer.close();
+
+    byte[] header = new byte[4];
+    try (FSDataInputStream in = fs.open(file)) {
+      in.readFully(header);
+    }
+    assertEquals(0, header[3]);
+    verify2Values(file);
+  }
+
+  @Test
+  public void testCompactRecordsAreReadBack() throws Exception {
+    setUp();
+    properties.put(HdfsSinkConnectorConfig.WAL_FORMAT_VERSION_CONFIG, "1");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(properties);
+    Path file = new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION));
+    List<String> names = new ArrayList<>();
+    names.add(WAL.beginMarker);
+    names.add("");
+    for (int i = 0; i < 1000; i++) {
+      int partition = i % 3;
+      names.add(url + "/topics/+tmp/topic/partition=" + partition + "/" + UUID.randomUUID()
+          + "_tmp.avro");
+      names.add(url + "/topics/topic/partition=" + partition + "/topic+0+"
+          + String.format("%010d+%010d", i * 10, i * 10 + 9) + ".avro");
+    }
+    names.add(WAL.endMarker);
+    names.add("");
+
+    long initialVersionLength = 0;
+    WALFile.Writer writer = WALFile.createWriter(connectorConfig, WALFile.Writer.file(file));
+    for (int i = 0; i < names.size(); i += 2) {
+      writer.append(new WALEntry(names.get(i)), new WALEntry(names.get(i + 1)));
+      DataOutputBuffer record = new DataOutputBuffer();
+      new WALEntry(names.get(i)).write(record);
+      new WALEntry(names.get(i + 1)).write(record);
+      initialVersionLength += 8 + record.getLength();
+    }
+    writer.close();
+
+    assertTrue(fs.getFileStatus(file).getLen() < initialVersionLength * 6 / 10);
+    WALFile.Reader reader = new WALFile.Reader(conf, WALFile.Reader.file(file));
+    WALEntry key = new WALEntry();
+    WALEntry value = new WALEntry();
+    for (int i = 0; i < names.size(); i += 2) {
+      assertTrue(reader.next(key, value));
+      assertEquals(names.get(i), key.getName());
+      assertEquals(names.get(i + 1), value.getName());
+    }
+    assertFalse(reader.next(key, value));
+    reader.close();
+  }
+
+  @Test(expected = CorruptWalFileException.class)
+  public void testBlockChecksumMismatchThrowsException() throws Exception {
+    setUp();
+    properties.put(HdfsSinkConnectorConfig.WAL_FORMAT_VERSION_CONFIG, "1");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(properties);
+    Path file = new Path(FileUtils.logFileName(url, logsDir, TOPIC_PARTITION));
+    WALFile.Writer writer = WALFile.createWriter(connectorConfig, WALFile.Writer.file(file));
+    writer.append(new WALEntry(WAL.beginMarker), new WALEntry(""));
+    writer.append(new WALEntry("/tmp/fileA"), new WALEntry("/committed/fileA"));
+    writer.append(new WALEntry(WAL.endMarker), new WALEntry(""));
+    writer.close();
+
+    byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+    try (FSDataInputStream in = fs.open(file)) {
+      in.readFully(bytes);
+    }
+    String contents = new String(bytes, StandardCharsets.ISO_8859_1);
+    bytes[contents.indexOf("fileA") + 4] = 'B';
+    try (FSDataOutputStream out = fs.create(file, true)) {
+      out.write(bytes);
+    }
+
+    readAllValues(file);
+  }
+
   @Test
   public void testHdfsIsDown() throws Exception {
     setUp();
@@ -98,4 +98,25 @@ public class WALTest extends TestWithMiniDFSCluster {
     assertFalse(fs.exists(new Path(tempfile)));
     storage.close();
   }
+
+  @Test
+  public void testTryAcquireLeaseDoesNotWait() throws Exception {
+    setUp();
+    String topicsDir = this.topicsDir.get(TOPIC_PARTITION.topic());
+    storage = new HdfsStorage(connectorConfig, url);
+    final FSWAL wal1 = (FSWAL) storage.wal(topicsDir, TOPIC_PARTITION);
+    final FSWAL wal2 = (FSWAL) storage.wal(topicsDir, TOPIC_PARTITION);
+
+    // Without a WAL file there is no lease to wait for, and none is created
+    assertTrue(wal2.tryAcquireLease());
+    assertFalse(fs.exists(new Path(wal2.getLogFile())));
+
+    wal1.acquireLease();
+    assertFalse(wal2.tryAcquireLease());
+
+    wal1.close();
+    assertTrue(wal2.tryAcquireLease());
+    wal2.close();
+    storage.close();
+  }
 }